@@ -15,13 +15,15 @@ import lombok.EqualsAndHashCode;
 import lombok.ToString;
 import oap.id.Identifier;
 import oap.json.properties.PropertiesDeserializer;
-import oap.util.AssocList;
 
 import javax.annotation.concurrent.NotThreadSafe;
 import java.io.Serial;
 import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Optional;
 
 import static oap.id.Identifier.Option.COMPACT;
 
@@ -76,13 +78,69 @@ public class OrganizationData implements Serializable {
         return ( T ) properties.get( property );
     }
 
-    public static class Accounts extends AssocList<String, Account> {
+    /**
+     * Accounts indexed by id, iterated in the insertion order. Serialized as a plain list of accounts.
+     */
+    public static class Accounts extends AbstractCollection<Account> implements Serializable {
         @Serial
         private static final long serialVersionUID = -7513787380810132946L;
 
+        private final LinkedHashMap<String, Account> accounts = new LinkedHashMap<>();
+
+        public Optional<Account> get( String id ) {
+            return Optional.ofNullable( accounts.get( id ) );
+        }
+
+        public boolean containsKey( String id ) {
+            return accounts.containsKey( id );
+        }
+
+        /**
+         * Replaces an account with the same id, keeping its position.
+         */
+        @Override
+        public boolean add( Account account ) {
+            accounts.put( account.id, account );
+            return true;
+        }
+
+        public boolean removeKey( String id ) {
+            return accounts.remove( id ) != null;
+        }
+
+        @Override
+        public boolean contains( Object o ) {
+            return o instanceof Account account && account.equals( accounts.get( account.id ) );
+        }
+
+        @Override
+        public boolean remove( Object o ) {
+            return o instanceof Account account && accounts.remove( account.id, account );
+        }
+
+        @Override
+        public void clear() {
+            accounts.clear();
+        }
+
+        @Override
+        public Iterator<Account> iterator() {
+            return accounts.values().iterator();
+        }
+
+        @Override
+        public int size() {
+            return accounts.size();
+        }
+
+        @Override
+        public boolean equals( Object o ) {
+            return o instanceof Accounts other && accounts.equals( other.accounts );
+        }
+
         @Override
-        protected String keyOf( Account account ) {
-            return account.id;
+        public int hashCode() {
+            return accounts.hashCode();
         }
     }
 }
@@ -45,22 +45,26 @@ public class User implements Serializable {
     public Ext ext;
     public String password;
     public boolean confirmed = false;
-    public String apiKey = RandomStringUtils.random( 30, true, true );
+    public String apiKey;
     @JsonProperty( access = JsonProperty.Access.WRITE_ONLY )
     public boolean create;
     public boolean tfaEnabled;
     public String defaultOrganization;
     public Map<String, String> defaultAccounts = new HashMap<>();
-    public String secretKey = generateSecretKey();
+    public String secretKey;
 
+    /**
+     * Deserialization constructor, does not generate keys: they are either read or generated by {@link #initKeys()}.
+     */
     @JsonCreator
     public User( @Nonnull String email ) {
-        this( null, email );
+        this.email = email;
     }
 
     public User( @Nullable String id, @Nonnull String email ) {
         this.id = id;
         this.email = email;
+        initKeys();
     }
 
     public User( @Nullable String id, @Nonnull String email, String firstName, String lastName, String password, boolean confirmed ) {
@@ -108,6 +112,20 @@ public class User implements Serializable {
         return email;
     }
 
+    /**
+     * Generates the api key and the secret key unless they are already set.
+     */
+    public User initKeys() {
+        if( apiKey == null ) {
+            apiKey = RandomStringUtils.random( 30, true, true );
+        }
+        if( secretKey == null ) {
+            secretKey = generateSecretKey();
+        }
+
+        return this;
+    }
+
     public User update( String firstName, String lastName, boolean tfaEnabled, Ext ext ) {
         this.firstName = firstName;
         this.lastName = lastName;
@@ -133,7 +151,7 @@ public class User implements Serializable {
     }
 
     public void refreshApiKey() {
-        this.apiKey = org.apache.commons.lang3.RandomStringUtils.random( 30, true, true );
+        this.apiKey = RandomStringUtils.random( 30, true, true );
     }
 
     public String getSecretKey() {
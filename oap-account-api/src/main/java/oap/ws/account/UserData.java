@@ -23,13 +23,16 @@ import org.joda.time.DateTime;
 
 import java.io.Serial;
 import java.io.Serializable;
-import java.util.ArrayList;
+import java.security.MessageDigest;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static oap.ws.sso.WsSecurity.SYSTEM;
 
 @ToString
@@ -41,7 +44,11 @@ public class UserData implements oap.ws.sso.User, Serializable {
     @JsonIgnore
     private final LinkedHashMap<String, Object> properties = new LinkedHashMap<>();
     public Map<String, String> roles = new HashMap<>();
-    public Map<String, List<String>> accounts = new HashMap<>();
+    /**
+     * organization id -> ids of the accounts the user is attached to, in the order they were added
+     */
+    @JsonDeserialize( contentAs = LinkedHashSet.class )
+    public Map<String, Set<String>> accounts = new HashMap<>();
     public User user;
     @JsonFormat( shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd" )
     public DateTime lastLogin;
@@ -106,7 +113,7 @@ public class UserData implements oap.ws.sso.User, Serializable {
     }
 
     public boolean canAccessAccount( String organizationId, String accountId ) {
-        List<String> userAccounts = this.accounts.get( organizationId );
+        Set<String> userAccounts = this.accounts.get( organizationId );
         return userAccounts != null && ( userAccounts.contains( ALL_ACCOUNTS ) || userAccounts.contains( accountId ) );
     }
 
@@ -114,15 +121,15 @@ public class UserData implements oap.ws.sso.User, Serializable {
         user.defaultAccounts.computeIfAbsent( organizationId, k -> accountId );
 
         if( ALL_ACCOUNTS.equals( accountId ) ) {
-            accounts.put( organizationId, new ArrayList<>( List.of( ALL_ACCOUNTS ) ) );
+            accounts.put( organizationId, new LinkedHashSet<>( List.of( ALL_ACCOUNTS ) ) );
             return this;
         }
-        List<String> accounts = this.accounts.get( organizationId );
+        Set<String> accounts = this.accounts.get( organizationId );
         if( accounts == null || accounts.contains( ALL_ACCOUNTS ) ) {
-            this.accounts.put( organizationId, new ArrayList<>( List.of( accountId ) ) );
+            this.accounts.put( organizationId, new LinkedHashSet<>( List.of( accountId ) ) );
             return this;
         }
-        if( !accounts.contains( accountId ) ) accounts.add( accountId );
+        accounts.add( accountId );
         return this;
     }
 
@@ -153,7 +160,9 @@ public class UserData implements oap.ws.sso.User, Serializable {
     }
 
     public boolean authenticate( String accessKey, String apiKey ) {
-        return !banned && getAccessKey().equals( accessKey ) && this.user.apiKey.equals( apiKey );
+        return !banned && getAccessKey().equals( accessKey )
+            && this.user.apiKey != null && apiKey != null
+            && MessageDigest.isEqual( this.user.apiKey.getBytes( UTF_8 ), apiKey.getBytes( UTF_8 ) );
     }
 
     public UserData assignRole( String organizationId, String role ) {
@@ -203,12 +212,6 @@ public class UserData implements oap.ws.sso.User, Serializable {
         return this;
     }
 
-    public UserData incCounter() {
-        user.counter += 1;
-
-        return this;
-    }
-
     @JsonAnySetter
     @JsonDeserialize( contentUsing = PropertiesDeserializer.class )
     public void putProperty( String name, Object value ) {
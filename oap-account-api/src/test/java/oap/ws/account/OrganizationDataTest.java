@@ -6,9 +6,13 @@
 
 package oap.ws.account;
 
+import oap.json.Binder;
 import org.testng.annotations.Test;
 
+import java.util.List;
+
 import static oap.testng.Asserts.assertString;
+import static org.assertj.core.api.Assertions.assertThat;
 
 public class OrganizationDataTest {
 
@@ -26,4 +30,19 @@ public class OrganizationDataTest {
         assertString( account3.id ).isEqualTo( "3" );
     }
 
+    @Test
+    public void accounts() {
+        var data = new OrganizationData( new Organization( "org1" ) );
+        data.addOrUpdateAccount( new Account( "2", "account2" ) );
+        data.addOrUpdateAccount( new Account( "1", "account1" ) );
+        data.addOrUpdateAccount( new Account( "2", "account2 updated" ) );
+
+        assertThat( data.accounts.get( "2" ) ).contains( new Account( "2", "account2 updated" ) );
+        assertThat( data.accounts ).containsExactly( new Account( "2", "account2 updated" ), new Account( "1", "account1" ) );
+
+        String json = Binder.json.marshal( data.accounts );
+        assertString( json ).isEqualTo( Binder.json.marshal( List.of( new Account( "2", "account2 updated" ), new Account( "1", "account1" ) ) ) );
+        assertThat( Binder.json.unmarshal( OrganizationData.class, Binder.json.marshal( data ) ) ).isEqualTo( data );
+    }
+
 }
@@ -34,6 +34,32 @@ public class UserTest {
         assertThat( Binder.json.unmarshal( UserData.class, json ) ).isEqualTo( user );
     }
 
+    @Test
+    public void unmarshalDoesNotGenerateKeys() {
+        User user = Binder.json.unmarshal( User.class, "{\"email\": \"email\"}" );
+
+        assertThat( user.apiKey ).isNull();
+        assertThat( user.secretKey ).isNull();
+
+        user.initKeys();
+
+        assertThat( user.apiKey ).hasSize( 30 );
+        assertThat( user.secretKey ).isNotEmpty();
+    }
+
+    @Test
+    public void accounts() {
+        UserData user = Binder.json.unmarshal( UserData.class, """
+            {"user": {"email": "email"}, "accounts": {"org1": ["acc2", "acc1", "acc2"]}}""" );
+
+        assertThat( user.accounts.get( "org1" ) ).containsExactly( "acc2", "acc1" );
+        assertThat( user.canAccessAccount( "org1", "acc1" ) ).isTrue();
+        assertThat( user.canAccessAccount( "org1", "acc3" ) ).isFalse();
+
+        user.addAccount( "org1", "*" );
+        assertThat( user.canAccessAccount( "org1", "acc3" ) ).isTrue();
+    }
+
     @Test
     public void id() {
         assertThat( Identifier.forAnnotationFixed().get( new User( "id", "mail" ) ) )
@@ -36,23 +36,22 @@ import java.util.Optional;
 @Slf4j
 public class Auth0Provider implements OauthProviderService {
 
-    private final String issuer;
     private final String claimPrefix;
-    private final String secret;
+    /**
+     * thread-safe, built once per provider
+     */
+    private final JWTVerifier verifier;
 
     public Auth0Provider( String issuer, String claimPrefix, String secret ) {
-        this.issuer = issuer;
         this.claimPrefix = claimPrefix;
-        this.secret = secret;
+        this.verifier = JWT.require( Algorithm.HMAC256( secret ) )
+            .withIssuer( issuer )
+            .build();
     }
 
     @Override
     public Optional<TokenInfo> getTokenInfo( String accessToken ) {
         try {
-            Algorithm algorithm = Algorithm.HMAC256( secret );
-            JWTVerifier verifier = JWT.require( algorithm )
-                .withIssuer( issuer )
-                .build();
             final DecodedJWT jwt = verifier.verify( accessToken );
 
             String email = jwt.getClaims().get( claimPrefix + "email" ).asString();
@@ -60,8 +59,8 @@ public class Auth0Provider implements OauthProviderService {
             String lastName = jwt.getClaims().get( claimPrefix + "family_name" ).asString();
             return Optional.of( new TokenInfo( email, firstName, lastName ) );
         } catch( JWTVerificationException e ) {
-            log.error( "Failed to extract user from Auth0 token", e );
-            throw e;
+            log.debug( "Rejected Auth0 token: {}", e.getMessage() );
+            return Optional.empty();
         }
     }
 }
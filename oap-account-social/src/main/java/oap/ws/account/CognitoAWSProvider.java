@@ -21,52 +21,169 @@
  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
  * SOFTWARE.
  */
-
 package oap.ws.account;
 
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.JWTDecodeException;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.auth0.jwt.interfaces.RSAKeyProvider;
+import com.auth0.jwt.interfaces.Verification;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import lombok.extern.slf4j.Slf4j;
+import oap.http.Http;
+import oap.http.client.OapHttpClient;
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jetty.client.ContentResponse;
+import org.eclipse.jetty.http.HttpMethod;
+import org.joda.time.DateTimeUtils;
 import software.amazon.awssdk.auth.credentials.ProfileCredentialsProvider;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.cognitoidentityprovider.CognitoIdentityProviderClient;
 import software.amazon.awssdk.services.cognitoidentityprovider.model.AttributeType;
 import software.amazon.awssdk.services.cognitoidentityprovider.model.GetUserRequest;
 import software.amazon.awssdk.services.cognitoidentityprovider.model.GetUserResponse;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.NotAuthorizedException;
+import software.amazon.awssdk.services.cognitoidentityprovider.model.UserNotFoundException;
 
+import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
+import java.security.KeyFactory;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.RSAPublicKeySpec;
+import java.time.Duration;
 import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * The Cognito client is created once and kept open until {@link #preStop()}, its connections are pooled and kept alive.
+ * <p>
+ * With {@code userPoolId} configured, id tokens are verified locally against the keys of the user pool (JWKS),
+ * so only access tokens cost a call to Cognito. Without it, id tokens are decoded without verification.
+ */
+@Slf4j
 public class CognitoAWSProvider implements OauthProviderService {
 
     private static final int PAYLOAD = 1;
+    private static final long JWKS_REFRESH_INTERVAL = TimeUnit.MINUTES.toMillis( 1 );
+    private static final long JWKS_TIMEOUT = TimeUnit.SECONDS.toMillis( 5 );
 
     private final CognitoIdentityProviderClient identityProviderClient;
+    private final String jwksUrl;
+    /**
+     * thread-safe, null if the user pool is not configured
+     */
+    private final JWTVerifier idTokenVerifier;
+    /**
+     * kid -> public key of the user pool, replaced as a whole on refresh
+     */
+    private volatile Map<String, RSAPublicKey> keys = Map.of();
+    private volatile long keysRefreshed;
+    /**
+     * false if the last reload of the keys failed
+     */
+    private volatile boolean keysLoaded;
 
     public CognitoAWSProvider( String region ) {
+        this( region, null, null, 50, 60000 );
+    }
+
+    /**
+     * @param userPoolId            user pool of the id tokens, blank to skip the verification of id tokens
+     * @param clientId              app client id expected as the audience of id tokens, blank to accept any
+     * @param maxConnections        maximum number of pooled connections to Cognito
+     * @param connectionMaxIdleTime time (ms) an idle pooled connection is kept alive
+     */
+    public CognitoAWSProvider( String region, String userPoolId, String clientId, int maxConnections, long connectionMaxIdleTime ) {
         this.identityProviderClient = CognitoIdentityProviderClient.builder()
             .region( Region.of( region ) )
             .credentialsProvider( ProfileCredentialsProvider.create() )
+            .httpClientBuilder( ApacheHttpClient.builder()
+                .maxConnections( maxConnections )
+                .tcpKeepAlive( true )
+                .connectionMaxIdleTime( Duration.ofMillis( connectionMaxIdleTime ) )
+                .useIdleConnectionReaper( true ) )
             .build();
+
+        if( StringUtils.isNotBlank( userPoolId ) ) {
+            String issuer = "https://cognito-idp." + region + ".amazonaws.com/" + userPoolId;
+            this.jwksUrl = issuer + "/.well-known/jwks.json";
+
+            Verification verification = JWT.require( Algorithm.RSA256( new UserPoolKeyProvider() ) )
+                .withIssuer( issuer )
+                .withClaim( "token_use", "id" );
+            if( StringUtils.isNotBlank( clientId ) ) {
+                verification.withAudience( clientId );
+            }
+            this.idTokenVerifier = verification.build();
+        } else {
+            log.warn( "userPoolId is not configured, Cognito id tokens are not verified" );
+            this.jwksUrl = null;
+            this.idTokenVerifier = null;
+        }
+    }
+
+    public void preStop() {
+        identityProviderClient.close();
     }
 
+    /**
+     * @param accessToken - access token, or id token if the user pool is configured
+     */
     @Override
     public Optional<TokenInfo> getTokenInfo( String accessToken ) {
+        if( idTokenVerifier != null && isIdToken( accessToken ) ) {
+            return getTokenInfoFromIdToken( accessToken );
+        }
+
         GetUserRequest getUserRequest = GetUserRequest.builder().accessToken( accessToken ).build();
 
-        final GetUserResponse user = identityProviderClient.getUser( getUserRequest );
+        final GetUserResponse user;
+        try {
+            user = identityProviderClient.getUser( getUserRequest );
+        } catch( NotAuthorizedException | UserNotFoundException e ) {
+            log.debug( "Rejected Cognito access token: {}", e.getMessage() );
+            return Optional.empty();
+        }
         for( AttributeType attribute : user.userAttributes() ) {
             if( "email".equals( attribute.name() ) ) {
-                identityProviderClient.close();
                 return Optional.of( new TokenInfo( attribute.value(), null, null ) );
             }
         }
-        identityProviderClient.close();
         return Optional.empty();
     }
 
     public Optional<TokenInfo> getTokenInfoFromIdToken( String idToken ) {
+        if( idTokenVerifier != null ) {
+            try {
+                DecodedJWT jwt = JWT.decode( idToken );
+                if( publicKey( jwt.getKeyId() ) == null ) {
+                    log.warn( "Rejected Cognito id token: unknown key {}", jwt.getKeyId() );
+                    return Optional.empty();
+                }
+                jwt = idTokenVerifier.verify( jwt );
+
+                return Optional.of( new TokenInfo(
+                    jwt.getClaim( "email" ).asString(),
+                    jwt.getClaim( "given_name" ).asString(),
+                    jwt.getClaim( "family_name" ).asString() ) );
+            } catch( JWTVerificationException e ) {
+                log.warn( "Rejected Cognito id token: {}", e.getMessage() );
+                return Optional.empty();
+            }
+        }
+
         final String payload = idToken.split( "\\." )[PAYLOAD];
         final byte[] payloadBytes = Base64.getUrlDecoder().decode( payload );
         final String payloadString = new String( payloadBytes, StandardCharsets.UTF_8 );
@@ -81,6 +198,14 @@ public class CognitoAWSProvider implements OauthProviderService {
         return Optional.empty();
     }
 
+    private static boolean isIdToken( String token ) {
+        try {
+            return "id".equals( JWT.decode( token ).getClaim( "token_use" ).asString() );
+        } catch( JWTDecodeException e ) {
+            return false;
+        }
+    }
+
     private Optional<String> getIfPresent( JsonObject object, String field ) {
         final JsonElement obj = object.get( field );
         if( obj != null ) {
@@ -88,4 +213,86 @@ public class CognitoAWSProvider implements OauthProviderService {
         }
         return Optional.empty();
     }
+
+    /**
+     * Called before the verification, so that a failed reload of the keys is a failure of the provider
+     * and not a rejected token.
+     *
+     * @return null if the user pool has no such key
+     */
+    private RSAPublicKey publicKey( String kid ) {
+        if( kid == null ) {
+            return null;
+        }
+
+        RSAPublicKey key = keys.get( kid );
+        if( key == null ) {
+            refreshKeys( kid );
+            key = keys.get( kid );
+        }
+        return key;
+    }
+
+    /**
+     * Reloads the keys of the user pool on an unknown kid (key rotation), at most once per {@link #JWKS_REFRESH_INTERVAL}.
+     * While the last reload failed, an unknown kid fails as well.
+     */
+    private synchronized void refreshKeys( String kid ) {
+        if( keys.containsKey( kid ) ) {
+            return;
+        }
+        if( DateTimeUtils.currentTimeMillis() - keysRefreshed < JWKS_REFRESH_INTERVAL ) {
+            if( !keysLoaded ) {
+                throw new IllegalStateException( "keys of " + jwksUrl + " are unavailable" );
+            }
+            return;
+        }
+        keysRefreshed = DateTimeUtils.currentTimeMillis();
+
+        try {
+            ContentResponse response = OapHttpClient.DEFAULT_HTTP_CLIENT
+                .newRequest( jwksUrl )
+                .method( HttpMethod.GET )
+                .timeout( JWKS_TIMEOUT, TimeUnit.MILLISECONDS )
+                .send();
+
+            Preconditions.checkState( response.getStatus() == Http.StatusCode.OK, "%s: %s", jwksUrl, response.getStatus() );
+
+            KeyFactory keyFactory = KeyFactory.getInstance( "RSA" );
+            Map<String, RSAPublicKey> keys = new HashMap<>();
+            for( JsonElement element : new JsonParser().parse( response.getContentAsString() ).getAsJsonObject().getAsJsonArray( "keys" ) ) {
+                JsonObject key = element.getAsJsonObject();
+                if( !"RSA".equals( key.get( "kty" ).getAsString() ) ) {
+                    continue;
+                }
+                BigInteger modulus = new BigInteger( 1, Base64.getUrlDecoder().decode( key.get( "n" ).getAsString() ) );
+                BigInteger exponent = new BigInteger( 1, Base64.getUrlDecoder().decode( key.get( "e" ).getAsString() ) );
+                keys.put( key.get( "kid" ).getAsString(), ( RSAPublicKey ) keyFactory.generatePublic( new RSAPublicKeySpec( modulus, exponent ) ) );
+            }
+            log.info( "loaded {} key(s) of {}", keys.size(), jwksUrl );
+            this.keys = Map.copyOf( keys );
+            this.keysLoaded = true;
+        } catch( Exception e ) {
+            keysLoaded = false;
+            log.error( "Failed to load Cognito keys from {}", jwksUrl, e );
+            throw Throwables.propagate( e );
+        }
+    }
+
+    private final class UserPoolKeyProvider implements RSAKeyProvider {
+        @Override
+        public RSAPublicKey getPublicKeyById( String kid ) {
+            return keys.get( kid );
+        }
+
+        @Override
+        public RSAPrivateKey getPrivateKey() {
+            return null;
+        }
+
+        @Override
+        public String getPrivateKeyId() {
+            return null;
+        }
+    }
 }
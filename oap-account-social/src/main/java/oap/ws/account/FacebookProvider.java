@@ -30,6 +30,7 @@ import com.restfb.FacebookClient;
 import com.restfb.Parameter;
 import com.restfb.Version;
 import com.restfb.exception.FacebookException;
+import com.restfb.exception.FacebookOAuthException;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.Optional;
@@ -37,13 +38,20 @@ import java.util.Optional;
 public class FacebookProvider implements OauthProviderService {
     private static final String FACEBOOK_FIELDS = "name,first_name,last_name,email";
 
-    public Optional<TokenInfo> getTokenInfo( String accessToken ) {
+    /**
+     * per-token clients share the web requestor (and its connections) and the json mapper of this one
+     */
+    private final DefaultFacebookClient facebookClient = new DefaultFacebookClient( Version.LATEST );
 
-        FacebookClient facebookClient = new DefaultFacebookClient( accessToken, Version.LATEST );
+    public Optional<TokenInfo> getTokenInfo( String accessToken ) {
+        FacebookClient facebookClient = this.facebookClient.createClientWithAccessToken( accessToken );
         try {
             com.restfb.types.User fbUser = facebookClient.fetchObject( "me", com.restfb.types.User.class,
                 Parameter.with( "fields", FACEBOOK_FIELDS ) );
             return Optional.of( new TokenInfo( fbUser.getEmail(), fbUser.getFirstName(), fbUser.getLastName() ) );
+        } catch( FacebookOAuthException e ) {
+            log.debug( "Rejected facebook token: {}", e.getErrorMessage() );
+            return Optional.empty();
         } catch( FacebookException e ) {
             log.error( "Failed to extract user from facebook token", e );
             throw e;
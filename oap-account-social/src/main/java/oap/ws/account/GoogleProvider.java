@@ -48,10 +48,15 @@ import java.util.Optional;
 public class GoogleProvider implements OauthProviderService {
     private static final HttpTransport HTTP_TRANSPORT = new NetHttpTransport();
     private static final GsonFactory GSON_FACTORY = new GsonFactory();
-    private final String clientId;
+    /**
+     * thread-safe, caches the Google public keys and refreshes them when they expire
+     */
+    private final GoogleIdTokenVerifier verifier;
 
     public GoogleProvider( String clientId ) {
-        this.clientId = clientId;
+        this.verifier = new GoogleIdTokenVerifier.Builder( HTTP_TRANSPORT, GSON_FACTORY )
+            .setAudience( Collections.singletonList( clientId ) )
+            .build();
     }
 
     /**
@@ -59,11 +64,7 @@ public class GoogleProvider implements OauthProviderService {
      * @return
      */
     public Optional<TokenInfo> getTokenInfo( String accessToken ) {
-        if( StringUtils.split( "." ).length > 2 ) {
-            GoogleIdTokenVerifier verifier = new GoogleIdTokenVerifier.Builder( HTTP_TRANSPORT, GSON_FACTORY )
-                .setAudience( Collections.singletonList( clientId ) )
-                .build();
-
+        if( StringUtils.split( accessToken, '.' ).length > 2 ) {
             try {
                 GoogleIdToken idToken = verifier.verify( accessToken );
                 if( idToken != null ) {
@@ -71,6 +72,9 @@ public class GoogleProvider implements OauthProviderService {
                     return Optional.of( new TokenInfo( payload.getEmail(), ( String ) payload.get( "given_name" ), ( String ) payload.get( "family_name" ) ) );
                 }
                 return Optional.empty();
+            } catch( IllegalArgumentException e ) {
+                log.debug( "Rejected google token: {}", e.getMessage() );
+                return Optional.empty();
             } catch( Exception e ) {
                 log.error( "Failed to extract user from google token", e );
                 throw Throwables.propagate( e );
@@ -82,7 +86,11 @@ public class GoogleProvider implements OauthProviderService {
                     .method( HttpMethod.GET )
                     .send();
 
-                Preconditions.checkArgument( response.getStatus() == Http.StatusCode.OK );
+                if( response.getStatus() == Http.StatusCode.BAD_REQUEST || response.getStatus() == Http.StatusCode.UNAUTHORIZED ) {
+                    log.debug( "Rejected google token: {}", response.getStatus() );
+                    return Optional.empty();
+                }
+                Preconditions.checkState( response.getStatus() == Http.StatusCode.OK, "tokeninfo: %s", response.getStatus() );
                 TokenInfoResponse info = Binder.json.unmarshal( new TypeRef<>() {}, response.getContent() );
 
                 return Optional.of( new TokenInfo( info.email, info.given_name, info.family_name ) );
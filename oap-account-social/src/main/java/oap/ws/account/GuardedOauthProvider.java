@@ -0,0 +1,172 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Open Application Platform Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package oap.ws.account;
+
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.joda.time.DateTimeUtils;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Calls a provider on its own threads, isolated from the other providers and from the request threads.
+ * <p>
+ * At most {@code maxConcurrency} calls run at once, a call over the limit fails immediately.
+ * A call fails after {@code timeout} ms, the provider call itself keeps its slot until it returns.
+ * After {@code failureThreshold} consecutive failures or timeouts the provider is not called for {@code openTime} ms,
+ * then a single trial call decides whether it is called again.
+ * A rejected token, an empty result or a {@link JWTVerificationException}, is an answer of the provider, not a failure:
+ * only exceptions of the provider (transport errors) and timeouts count.
+ * Calls refused by the limit or the breaker and timeouts are reported as {@link OauthProviderUnavailableException}.
+ */
+@Slf4j
+final class GuardedOauthProvider implements OauthProviderService {
+    private final OauthProvider source;
+    private final OauthProviderService provider;
+    private final long timeout;
+    private final int failureThreshold;
+    private final long openTime;
+    private final Semaphore permits;
+    private final ExecutorService executor;
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicBoolean trial = new AtomicBoolean();
+    private volatile long openUntil;
+
+    GuardedOauthProvider( OauthProvider source, OauthProviderService provider, int maxConcurrency, long timeout, int failureThreshold, long openTime ) {
+        this.source = source;
+        this.provider = provider;
+        this.timeout = timeout;
+        this.failureThreshold = failureThreshold;
+        this.openTime = openTime;
+        this.permits = new Semaphore( maxConcurrency );
+        this.executor = Executors.newCachedThreadPool( new ThreadFactoryBuilder()
+            .setNameFormat( "oauth-" + source.name().toLowerCase() + "-%d" )
+            .setDaemon( true )
+            .build() );
+
+        Metrics.gauge( "xenoss-account.oauth.in_flight", Tags.of( "provider", source.name() ),
+            permits, p -> maxConcurrency - p.availablePermits() );
+    }
+
+    @Override
+    public Optional<TokenInfo> getTokenInfo( String accessToken ) {
+        return OauthService.join( getTokenInfoAsync( accessToken ) );
+    }
+
+    @Override
+    public CompletableFuture<Optional<TokenInfo>> getTokenInfoAsync( String accessToken ) {
+        boolean trialCall = false;
+        if( DateTimeUtils.currentTimeMillis() < openUntil ) {
+            return unavailable( "open", "circuit breaker is open" );
+        }
+        if( failures.get() >= failureThreshold ) {
+            if( !trial.compareAndSet( false, true ) ) {
+                return unavailable( "open", "circuit breaker is open" );
+            }
+            trialCall = true;
+        }
+
+        if( !permits.tryAcquire() ) {
+            if( trialCall ) {
+                trial.set( false );
+            }
+            return unavailable( "bulkhead", "too many concurrent calls" );
+        }
+
+        boolean trialCallFinal = trialCall;
+        CompletableFuture<Optional<TokenInfo>> call;
+        try {
+            call = CompletableFuture.supplyAsync( () -> provider.getTokenInfo( accessToken ), executor );
+        } catch( RuntimeException e ) {
+            permits.release();
+            if( trialCallFinal ) {
+                trial.set( false );
+            }
+            return CompletableFuture.failedFuture( new OauthProviderUnavailableException( source, "cannot call the provider", e ) );
+        }
+        call.whenComplete( ( tokenInfo, e ) -> permits.release() );
+
+        return call.copy()
+            .orTimeout( timeout, TimeUnit.MILLISECONDS )
+            .handle( ( tokenInfo, e ) -> {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                if( cause == null || cause instanceof JWTVerificationException ) {
+                    succeeded( trialCallFinal );
+                    Metrics.counter( "xenoss-account.oauth.calls", "provider", source.name(), "status", cause == null ? "success" : "rejected" ).increment();
+                    if( cause != null ) {
+                        throw ( JWTVerificationException ) cause;
+                    }
+                    return tokenInfo;
+                }
+
+                failed( trialCallFinal );
+                if( cause instanceof TimeoutException ) {
+                    Metrics.counter( "xenoss-account.oauth.calls", "provider", source.name(), "status", "timeout" ).increment();
+                    throw new OauthProviderUnavailableException( source, "no answer in " + timeout + " ms", cause );
+                }
+                Metrics.counter( "xenoss-account.oauth.calls", "provider", source.name(), "status", "failed" ).increment();
+                throw cause instanceof RuntimeException ? ( RuntimeException ) cause : new CompletionException( cause );
+            } );
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void succeeded( boolean trialCall ) {
+        failures.set( 0 );
+        if( trialCall ) {
+            log.info( "{}: circuit breaker is closed", source );
+            trial.set( false );
+        }
+    }
+
+    private void failed( boolean trialCall ) {
+        if( failures.incrementAndGet() >= failureThreshold || trialCall ) {
+            log.warn( "{}: circuit breaker is open for {} ms", source, openTime );
+            openUntil = DateTimeUtils.currentTimeMillis() + openTime;
+        }
+        if( trialCall ) {
+            trial.set( false );
+        }
+    }
+
+    private CompletableFuture<Optional<TokenInfo>> unavailable( String status, String message ) {
+        Metrics.counter( "xenoss-account.oauth.calls", "provider", source.name(), "status", status ).increment();
+
+        return CompletableFuture.failedFuture( new OauthProviderUnavailableException( source, message ) );
+    }
+}
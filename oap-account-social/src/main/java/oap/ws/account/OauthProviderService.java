@@ -21,14 +21,27 @@
  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
  * SOFTWARE.
  */
-
 package oap.ws.account;
 
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 public interface OauthProviderService {
 
+    /**
+     * @return empty if the provider rejects the token, an exception means the provider could not answer
+     */
     Optional<TokenInfo> getTokenInfo( String accessToken );
 
+    /**
+     * The default implementation calls {@link #getTokenInfo(String)} on the calling thread.
+     */
+    default CompletableFuture<Optional<TokenInfo>> getTokenInfoAsync( String accessToken ) {
+        try {
+            return CompletableFuture.completedFuture( getTokenInfo( accessToken ) );
+        } catch( RuntimeException e ) {
+            return CompletableFuture.failedFuture( e );
+        }
+    }
 }
@@ -21,19 +21,180 @@
  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
  * SOFTWARE.
  */
-
 package oap.ws.account;
 
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.exceptions.JWTDecodeException;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.joda.time.DateTimeUtils;
+
+import java.util.Date;
+import java.util.EnumMap;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Provider results are cached by (provider, token digest), so repeated logins with the same token do not call the provider again.
+ * <p>
+ * A token info is cached for at most {@code ttl} ms and never past the expiration of a JWT token.
+ * Rejected tokens, an empty result or a {@link JWTVerificationException}, are cached for {@code rejectedTtl} ms.
+ * Other failures are not cached.
+ * <p>
+ * Calls to a provider are guarded by a {@link GuardedOauthProvider}: concurrency limit, deadline and circuit breaker per provider.
+ * <p>
+ * oap-ws handlers are synchronous, so {@code AuthWS} and {@code OrganizationWS} call {@code getTokenInfo} and hold the request
+ * thread until the answer or the deadline: the guard bounds how long and how many request threads a degraded provider can hold,
+ * it does not free them. {@code getTokenInfoAsync} is for callers able to compose the future.
+ */
+@Slf4j
 public class OauthService {
     private final Map<OauthProvider, OauthProviderService> providers;
+    private final Map<OauthProvider, GuardedOauthProvider> guardedProviders;
+    private final long ttl;
+    private final long rejectedTtl;
+    private final Cache<String, CachedTokenInfo> tokens;
+    private final Cache<String, CachedTokenInfo> rejectedTokens;
 
     public OauthService( Map<OauthProvider, OauthProviderService> providers ) {
-        this.providers = providers;
+        this( providers, 10000, 60000, 10000, 32, 5000, 5, 30000 );
+    }
+
+    /**
+     * @param maximumSize      maximum number of cached tokens, accepted and rejected ones separately
+     * @param ttl              upper bound (ms) of the time a token info stays in the cache
+     * @param rejectedTtl      time (ms) a rejected token stays in the cache
+     * @param maxConcurrency   maximum number of concurrent calls per provider
+     * @param timeout          deadline (ms) of a provider call
+     * @param failureThreshold number of consecutive failed calls opening the circuit breaker of a provider
+     * @param openTime         time (ms) a provider is not called after its circuit breaker is opened
+     */
+    public OauthService( Map<OauthProvider, OauthProviderService> providers, long maximumSize, long ttl, long rejectedTtl,
+                         int maxConcurrency, long timeout, int failureThreshold, long openTime ) {
+        this.ttl = ttl;
+        this.rejectedTtl = rejectedTtl;
+        this.tokens = CacheBuilder.newBuilder()
+            .maximumSize( maximumSize )
+            .expireAfterWrite( ttl, TimeUnit.MILLISECONDS )
+            .recordStats()
+            .build();
+        this.rejectedTokens = CacheBuilder.newBuilder()
+            .maximumSize( maximumSize )
+            .expireAfterWrite( rejectedTtl, TimeUnit.MILLISECONDS )
+            .recordStats()
+            .build();
+
+        GuavaCacheMetrics.monitor( Metrics.globalRegistry, tokens, "xenoss-account.oauth" );
+        GuavaCacheMetrics.monitor( Metrics.globalRegistry, rejectedTokens, "xenoss-account.oauth.rejected" );
+
+        this.guardedProviders = new EnumMap<>( OauthProvider.class );
+        this.providers = new EnumMap<>( OauthProvider.class );
+        providers.forEach( ( source, provider ) -> {
+            GuardedOauthProvider guardedProvider = new GuardedOauthProvider( source, provider, maxConcurrency, timeout, failureThreshold, openTime );
+            this.guardedProviders.put( source, guardedProvider );
+            this.providers.put( source, new CachedProvider( source, guardedProvider ) );
+        } );
     }
 
     public OauthProviderService getOauthProvider( OauthProvider source ) {
         return providers.get( source );
     }
+
+    public void preStop() {
+        guardedProviders.values().forEach( GuardedOauthProvider::shutdown );
+    }
+
+    /**
+     * Waits for the future, unwrapping runtime exceptions.
+     */
+    static Optional<TokenInfo> join( CompletableFuture<Optional<TokenInfo>> future ) {
+        try {
+            return future.join();
+        } catch( CompletionException e ) {
+            if( e.getCause() instanceof RuntimeException ) {
+                throw ( RuntimeException ) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static long expiresAt( String accessToken ) {
+        try {
+            Date expiresAt = JWT.decode( accessToken ).getExpiresAt();
+            return expiresAt != null ? expiresAt.getTime() : Long.MAX_VALUE;
+        } catch( JWTDecodeException e ) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private final class CachedProvider implements OauthProviderService {
+        private final OauthProvider source;
+        private final OauthProviderService provider;
+
+        private CachedProvider( OauthProvider source, OauthProviderService provider ) {
+            this.source = source;
+            this.provider = provider;
+        }
+
+        @Override
+        public Optional<TokenInfo> getTokenInfo( String accessToken ) {
+            return join( getTokenInfoAsync( accessToken ) );
+        }
+
+        @Override
+        public CompletableFuture<Optional<TokenInfo>> getTokenInfoAsync( String accessToken ) {
+            String key = source + ":" + Hashing.sha256().hashString( accessToken, UTF_8 );
+            long now = DateTimeUtils.currentTimeMillis();
+
+            CachedTokenInfo cached = tokens.getIfPresent( key );
+            if( cached == null ) {
+                cached = rejectedTokens.getIfPresent( key );
+            }
+            if( cached != null ) {
+                if( now < cached.expiresAt ) {
+                    return cached.get();
+                }
+
+                tokens.invalidate( key );
+                rejectedTokens.invalidate( key );
+            }
+
+            return provider.getTokenInfoAsync( accessToken ).whenComplete( ( tokenInfo, e ) -> {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                if( cause instanceof JWTVerificationException ) {
+                    rejectedTokens.put( key, new CachedTokenInfo( Optional.empty(), ( JWTVerificationException ) cause, now + rejectedTtl ) );
+                } else if( cause == null && tokenInfo.isPresent() ) {
+                    tokens.put( key, new CachedTokenInfo( tokenInfo, null, Math.min( now + ttl, expiresAt( accessToken ) ) ) );
+                } else if( cause == null ) {
+                    rejectedTokens.put( key, new CachedTokenInfo( tokenInfo, null, now + rejectedTtl ) );
+                }
+            } );
+        }
+    }
+
+    private static final class CachedTokenInfo {
+        private final Optional<TokenInfo> tokenInfo;
+        private final JWTVerificationException rejection;
+        private final long expiresAt;
+
+        private CachedTokenInfo( Optional<TokenInfo> tokenInfo, JWTVerificationException rejection, long expiresAt ) {
+            this.tokenInfo = tokenInfo;
+            this.rejection = rejection;
+            this.expiresAt = expiresAt;
+        }
+
+        private CompletableFuture<Optional<TokenInfo>> get() {
+            return rejection != null ? CompletableFuture.failedFuture( rejection ) : CompletableFuture.completedFuture( tokenInfo );
+        }
+    }
 }
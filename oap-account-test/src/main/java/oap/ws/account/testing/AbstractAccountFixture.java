@@ -276,6 +276,16 @@ public abstract class AbstractAccountFixture<Self extends AbstractAccountFixture
         return ( Self ) this;
     }
 
+    /**
+     * Replaces the social providers by {@link LocalOauthProvider}s, for load tests.
+     */
+    @SuppressWarnings( "unchecked" )
+    public Self withLocalOauthProviders() {
+        withConfResource( getClass(), "/application-account.fixture-oauth-local.conf" );
+
+        return ( Self ) this;
+    }
+
     public TransportMock getTransportMock() {
         return service( "oap-account-test", TransportMock.class );
     }
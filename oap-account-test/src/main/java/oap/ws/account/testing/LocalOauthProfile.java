@@ -0,0 +1,62 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Open Application Platform Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package oap.ws.account.testing;
+
+import org.apache.commons.lang3.math.NumberUtils;
+
+/**
+ * Latency and failure profile shared by the {@link LocalOauthProvider} stand-ins.
+ * <p>
+ * The fixture profile is read from OAUTH_LATENCY, OAUTH_LATENCY_JITTER (ms), OAUTH_FAILURE_RATE and OAUTH_REJECTION_RATE ([0..1]),
+ * by default the stand-ins answer immediately and never fail.
+ */
+public class LocalOauthProfile {
+    public static final LocalOauthProfile NONE = new LocalOauthProfile( 0, 0, 0, 0 );
+
+    public final long latency;
+    public final long latencyJitter;
+    public final double failureRate;
+    public final double rejectionRate;
+
+    /**
+     * @param latency       minimal duration (ms) of a call
+     * @param latencyJitter maximum random duration (ms) added to the latency
+     * @param failureRate   probability [0..1] of a failed call
+     * @param rejectionRate probability [0..1] of a rejected valid token
+     */
+    public LocalOauthProfile( long latency, long latencyJitter, double failureRate, double rejectionRate ) {
+        this.latency = latency;
+        this.latencyJitter = latencyJitter;
+        this.failureRate = failureRate;
+        this.rejectionRate = rejectionRate;
+    }
+
+    public static LocalOauthProfile fromEnv() {
+        return new LocalOauthProfile(
+            NumberUtils.toLong( System.getenv( "OAUTH_LATENCY" ), 0 ),
+            NumberUtils.toLong( System.getenv( "OAUTH_LATENCY_JITTER" ), 0 ),
+            NumberUtils.toDouble( System.getenv( "OAUTH_FAILURE_RATE" ), 0 ),
+            NumberUtils.toDouble( System.getenv( "OAUTH_REJECTION_RATE" ), 0 ) );
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) Open Application Platform Authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package oap.ws.account.testing;
+
+import lombok.extern.slf4j.Slf4j;
+import oap.ws.account.OauthProvider;
+import oap.ws.account.OauthProviderService;
+import oap.ws.account.TokenInfo;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Offline stand-in of an identity provider for load tests.
+ * <p>
+ * A token containing {@code @} resolves to that email, any other token to {@code newuser@user.com}.
+ * Tokens starting with {@code invalid} are rejected with an empty result, like the real providers do:
+ * <ul>
+ *     <li>GOOGLE: an id token failing the verification, a malformed id token or a 400/401 tokeninfo reply for an access token</li>
+ *     <li>AUTH0: a {@code JWTVerificationException}</li>
+ *     <li>COGNITO: an id token failing the verification, a {@code NotAuthorizedException} or {@code UserNotFoundException} of GetUser</li>
+ *     <li>FACEBOOK: a {@code FacebookOAuthException}</li>
+ * </ul>
+ * A failure of the provider (transport error, 5xx) is an {@link IllegalStateException}.
+ * <p>
+ * The latency and the failures follow a {@link LocalOauthProfile}. The calls, failures and the maximum number
+ * of concurrent calls are counted, to check the caching and the bulkhead of {@link oap.ws.account.OauthService}.
+ * The fixture uses the stand-ins only when asked to, see {@link AbstractAccountFixture#withLocalOauthProviders()}.
+ */
+@Slf4j
+public class LocalOauthProvider implements OauthProviderService {
+    public static final String DEFAULT_EMAIL = "newuser@user.com";
+
+    private final OauthProvider source;
+    private final LocalOauthProfile profile;
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+    public LocalOauthProvider( OauthProvider source ) {
+        this( source, LocalOauthProfile.fromEnv() );
+    }
+
+    public LocalOauthProvider( OauthProvider source, LocalOauthProfile profile ) {
+        this.source = source;
+        this.profile = profile;
+    }
+
+    @Override
+    public Optional<TokenInfo> getTokenInfo( String accessToken ) {
+        calls.incrementAndGet();
+        maxConcurrent.accumulateAndGet( concurrent.incrementAndGet(), Math::max );
+        try {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+
+            long duration = profile.latency + ( profile.latencyJitter > 0 ? random.nextLong( profile.latencyJitter + 1 ) : 0 );
+            if( duration > 0 ) {
+                try {
+                    Thread.sleep( duration );
+                } catch( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException( source + ": interrupted", e );
+                }
+            }
+
+            if( profile.failureRate > 0 && random.nextDouble() < profile.failureRate ) {
+                failures.incrementAndGet();
+                throw new IllegalStateException( source + " is unavailable" );
+            }
+
+            if( accessToken.startsWith( "invalid" ) || profile.rejectionRate > 0 && random.nextDouble() < profile.rejectionRate ) {
+                log.trace( "{}: rejected token {}", source, accessToken );
+                return Optional.empty();
+            }
+
+            String email = accessToken.contains( "@" ) ? accessToken : DEFAULT_EMAIL;
+            return Optional.of( new TokenInfo( email, "John", "Smith" ) );
+        } finally {
+            concurrent.decrementAndGet();
+        }
+    }
+
+    public long calls() {
+        return calls.get();
+    }
+
+    public long failures() {
+        return failures.get();
+    }
+
+    public int maxConcurrent() {
+        return maxConcurrent.get();
+    }
+
+    public void reset() {
+        calls.set( 0 );
+        failures.set( 0 );
+        maxConcurrent.set( 0 );
+    }
+}
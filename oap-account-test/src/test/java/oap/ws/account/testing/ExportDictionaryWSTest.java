@@ -6,13 +6,25 @@ import oap.storage.mongo.MongoFixture;
 import oap.testng.Fixtures;
 import oap.testng.SystemTimerFixture;
 import oap.testng.TestDirectoryFixture;
+import oap.ws.account.Account;
 import oap.ws.account.Organization;
+import oap.ws.account.OrganizationData;
+import oap.ws.account.User;
+import oap.ws.account.UserData;
+import org.joda.time.DateTimeUtils;
 import org.testng.annotations.Test;
 
 import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
+import static oap.http.Http.StatusCode.NOT_MODIFIED;
+import static oap.http.Http.StatusCode.OK;
 import static oap.http.test.HttpAsserts.assertGet;
+import static oap.ws.account.testing.AbstractAccountFixture.DEFAULT_PASSWORD;
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class ExportDictionaryWSTest extends Fixtures {
@@ -44,4 +56,113 @@ public class ExportDictionaryWSTest extends Fixtures {
                 }
             } );
     }
+
+    @Test
+    public void testNotModified() {
+        long changed = 1706030569100L; // Tue, 23 Jan 2024 17:22:49.100 GMT
+        DateTimeUtils.setCurrentMillisFixed( changed );
+        accountFixture.organizationStorage().storeOrganization( new Organization( "test", "test" ), Storage.MODIFIED_BY_SYSTEM );
+
+        String url = accountFixture.httpUrl( "/export/dictionary/organizations" );
+        String[] etag = new String[1];
+        assertGet( url )
+            .hasCode( OK )
+            .satisfies( resp -> {
+                etag[0] = resp.header( "ETag" ).orElseThrow();
+                assertThat( resp.header( "Last-Modified" ) ).isEmpty();
+            } );
+
+        assertGet( url, Map.of(), Map.of( "If-None-Match", etag[0] ) )
+            .hasCode( NOT_MODIFIED )
+            .containsHeader( "ETag", etag[0] );
+        assertGet( url, Map.of(), Map.of( "If-Modified-Since", "Tue, 23 Jan 2024 17:22:49 GMT" ) )
+            .hasCode( OK );
+
+        DateTimeUtils.setCurrentMillisFixed( changed + 1000 );
+
+        assertGet( url )
+            .hasCode( OK )
+            .containsHeader( "ETag", etag[0] )
+            .containsHeader( "Last-Modified", "Tue, 23 Jan 2024 17:22:49 GMT" );
+        assertGet( url, Map.of(), Map.of( "If-Modified-Since", "Tue, 23 Jan 2024 17:22:49 GMT" ) )
+            .hasCode( NOT_MODIFIED );
+        assertGet( url, Map.of(), Map.of( "If-Modified-Since", "Tue, 23 Jan 2024 17:22:48 GMT" ) )
+            .hasCode( OK );
+
+        accountFixture.organizationStorage().storeOrganization( new Organization( "test2", "test2" ), Storage.MODIFIED_BY_SYSTEM );
+
+        assertGet( url, Map.of(), Map.of( "If-None-Match", etag[0] ) )
+            .hasCode( OK )
+            .satisfies( resp -> assertThat( resp.header( "ETag" ).orElseThrow() ).isNotEqualTo( etag[0] ) );
+        assertGet( url, Map.of(), Map.of( "If-Modified-Since", "Tue, 23 Jan 2024 17:22:50 GMT" ) )
+            .hasCode( OK );
+    }
+
+    @Test
+    public void testAccounts() {
+        OrganizationData organization = accountFixture.organizationStorage().storeOrganization( new Organization( "accounts", "accounts" ), Storage.MODIFIED_BY_SYSTEM );
+        String organizationId = organization.organization.id;
+        accountFixture.organizationStorage().storeAccount( organizationId, new Account( "acc1", "account 1" ), Storage.MODIFIED_BY_SYSTEM );
+        accountFixture.organizationStorage().storeAccount( organizationId, new Account( "acc2", "account 2" ), Storage.MODIFIED_BY_SYSTEM );
+
+        assertGet( accountFixture.httpUrl( "/export/dictionary/accounts" ) )
+            .isOk()
+            .satisfies( resp -> {
+                RowBinaryInputStream rowBinaryInputStream = rows( resp.content() );
+                assertThat( rowBinaryInputStream.headers ).isEqualTo( new String[] { "organization_id", "id", "name" } );
+                assertThat( readRows( rowBinaryInputStream, 3 ) ).containsSubsequence(
+                    List.of( organizationId, "acc1", "account 1" ),
+                    List.of( organizationId, "acc2", "account 2" ) );
+            } );
+    }
+
+    @Test
+    public void testUserAccounts() {
+        String organizationId = accountFixture.organizationStorage().storeOrganization( new Organization( "user accounts", "user accounts" ), Storage.MODIFIED_BY_SYSTEM ).organization.id;
+
+        UserData some = accountFixture.addUser( new UserData( new User( null, "some@accounts", "fn", "ln", DEFAULT_PASSWORD, true ), Map.of( organizationId, "USER" ) )
+            .addAccount( organizationId, "acc1" )
+            .addAccount( organizationId, "acc2" ) );
+        UserData all = accountFixture.addUser( new UserData( new User( null, "all@accounts", "fn", "ln", DEFAULT_PASSWORD, true ), Map.of( organizationId, "ADMIN" ) )
+            .addAccount( organizationId, "*" ) );
+        UserData noRole = accountFixture.addUser( new UserData( new User( null, "norole@accounts", "fn", "ln", DEFAULT_PASSWORD, true ), Map.of() )
+            .addAccount( organizationId, "acc1" ) );
+
+        assertGet( accountFixture.httpUrl( "/export/dictionary/user_accounts" ) )
+            .isOk()
+            .satisfies( resp -> {
+                RowBinaryInputStream rowBinaryInputStream = rows( resp.content() );
+                assertThat( rowBinaryInputStream.headers ).isEqualTo( new String[] { "user_id", "organization_id", "account_id", "role" } );
+                assertThat( readRows( rowBinaryInputStream, 4 ) ).contains(
+                    List.of( some.getId(), organizationId, "acc1", "USER" ),
+                    List.of( some.getId(), organizationId, "acc2", "USER" ),
+                    List.of( all.getId(), organizationId, "*", "ADMIN" ),
+                    List.of( noRole.getId(), organizationId, "acc1", "" ) );
+            } );
+    }
+
+    private static RowBinaryInputStream rows( byte[] content ) {
+        try {
+            return new RowBinaryInputStream( new ByteArrayInputStream( content ) );
+        } catch( IOException e ) {
+            throw new RuntimeException( e );
+        }
+    }
+
+    private static List<List<String>> readRows( RowBinaryInputStream rowBinaryInputStream, int columns ) {
+        List<List<String>> rows = new ArrayList<>();
+        try {
+            while( true ) {
+                List<String> row = new ArrayList<>();
+                for( int i = 0; i < columns; i++ ) {
+                    row.add( rowBinaryInputStream.readString() );
+                }
+                rows.add( row );
+            }
+        } catch( EOFException e ) {
+            return rows;
+        } catch( IOException e ) {
+            throw new RuntimeException( e );
+        }
+    }
 }
@@ -0,0 +1,109 @@
+package oap.ws.account.testing;
+
+import oap.ws.account.OauthProvider;
+import oap.ws.account.OauthProviderService;
+import oap.ws.account.OauthProviderUnavailableException;
+import oap.ws.account.OauthService;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class OauthServiceTest {
+    @Test
+    public void cache() {
+        LocalOauthProvider google = new LocalOauthProvider( OauthProvider.GOOGLE, LocalOauthProfile.NONE );
+        LocalOauthProvider auth0 = new LocalOauthProvider( OauthProvider.AUTH0, LocalOauthProfile.NONE );
+        OauthService oauthService = new OauthService( Map.of( OauthProvider.GOOGLE, google, OauthProvider.AUTH0, auth0 ) );
+
+        for( int i = 0; i < 10; i++ ) {
+            assertThat( oauthService.getOauthProvider( OauthProvider.GOOGLE ).getTokenInfo( "user@user.com" ) )
+                .hasValueSatisfying( tokenInfo -> assertThat( tokenInfo.email ).isEqualTo( "user@user.com" ) );
+            assertThat( oauthService.getOauthProvider( OauthProvider.GOOGLE ).getTokenInfo( "invalid" ) ).isEmpty();
+            assertThat( oauthService.getOauthProvider( OauthProvider.AUTH0 ).getTokenInfo( "invalid" ) ).isEmpty();
+        }
+
+        assertThat( google.calls() ).isEqualTo( 2 );
+        assertThat( auth0.calls() ).isEqualTo( 1 );
+
+        oauthService.preStop();
+    }
+
+    @Test
+    public void bulkhead() {
+        LocalOauthProvider slow = new LocalOauthProvider( OauthProvider.FACEBOOK, new LocalOauthProfile( 200, 0, 0, 0 ) );
+        LocalOauthProvider google = new LocalOauthProvider( OauthProvider.GOOGLE, LocalOauthProfile.NONE );
+        OauthService oauthService = new OauthService( Map.of( OauthProvider.FACEBOOK, slow, OauthProvider.GOOGLE, google ),
+            1000, 60000, 10000, 4, 5000, 100, 30000 );
+
+        OauthProviderService facebook = oauthService.getOauthProvider( OauthProvider.FACEBOOK );
+        List<CompletableFuture<?>> calls = new ArrayList<>();
+        for( int i = 0; i < 20; i++ ) {
+            calls.add( facebook.getTokenInfoAsync( "user" + i + "@user.com" ) );
+        }
+
+        assertThat( oauthService.getOauthProvider( OauthProvider.GOOGLE ).getTokenInfo( "user@user.com" ) ).isPresent();
+
+        long rejected = calls.stream()
+            .filter( call -> {
+                try {
+                    call.join();
+                    return false;
+                } catch( CompletionException e ) {
+                    return e.getCause() instanceof OauthProviderUnavailableException;
+                }
+            } )
+            .count();
+
+        assertThat( slow.maxConcurrent() ).isLessThanOrEqualTo( 4 );
+        assertThat( slow.calls() ).isEqualTo( 20 - rejected );
+        assertThat( rejected ).isGreaterThanOrEqualTo( 16 );
+
+        oauthService.preStop();
+    }
+
+    @Test
+    public void circuitBreaker() {
+        LocalOauthProvider down = new LocalOauthProvider( OauthProvider.COGNITO, new LocalOauthProfile( 0, 0, 1, 0 ) );
+        OauthService oauthService = new OauthService( Map.of( OauthProvider.COGNITO, down ),
+            1000, 60000, 10000, 4, 5000, 3, 30000 );
+
+        OauthProviderService cognito = oauthService.getOauthProvider( OauthProvider.COGNITO );
+        for( int i = 0; i < 3; i++ ) {
+            assertThatThrownBy( () -> cognito.getTokenInfo( "user@user.com" ) ).isInstanceOf( IllegalStateException.class );
+        }
+        assertThatThrownBy( () -> cognito.getTokenInfo( "user@user.com" ) ).isInstanceOf( OauthProviderUnavailableException.class );
+
+        assertThat( down.calls() ).isEqualTo( 3 );
+
+        oauthService.preStop();
+    }
+
+    @Test
+    public void rejectedTokensDoNotOpenCircuitBreaker() {
+        Map<OauthProvider, LocalOauthProvider> providers = new EnumMap<>( OauthProvider.class );
+        for( OauthProvider source : OauthProvider.values() ) {
+            providers.put( source, new LocalOauthProvider( source, LocalOauthProfile.NONE ) );
+        }
+        OauthService oauthService = new OauthService( Map.copyOf( providers ), 1000, 60000, 10000, 4, 5000, 3, 30000 );
+
+        for( OauthProvider source : OauthProvider.values() ) {
+            OauthProviderService provider = oauthService.getOauthProvider( source );
+            for( int i = 0; i < 10; i++ ) {
+                assertThat( provider.getTokenInfo( "invalid" + i ) ).isEmpty();
+            }
+
+            assertThat( provider.getTokenInfo( "user@user.com" ) ).isPresent();
+            assertThat( providers.get( source ).calls() ).isEqualTo( 11 );
+        }
+
+        oauthService.preStop();
+    }
+}
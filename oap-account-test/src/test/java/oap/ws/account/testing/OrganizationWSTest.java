@@ -177,6 +177,51 @@ public class OrganizationWSTest extends Fixtures {
                 } ]""" );
     }
 
+    @Test
+    public void listPage() {
+        Dates.setTimeFixed( 2015, 1, 23, 17, 22, 49 );
+
+        accountFixture.organizationStorage().storeOrganization( new Organization( "AAA", "first", "first" ), Storage.MODIFIED_BY_SYSTEM );
+        accountFixture.organizationStorage().storeOrganization( new Organization( "ZZZ", "last", "last" ), Storage.MODIFIED_BY_SYSTEM );
+        accountFixture.assertAdminLogin();
+        assertGet( accountFixture.httpUrl( "/organizations?offset=1&limit=1" ) )
+            .respondedJson( OK, "OK", """
+                [ {
+                  "created" : "2010-01-23T17:22:49.000Z",
+                  "description" : "Default organization",
+                  "id" : "DFLT",
+                  "modified" : "2010-01-23T17:22:49.000Z",
+                  "name" : "Default"
+                } ]""" );
+        assertGet( accountFixture.httpUrl( "/organizations?offset=2" ) )
+            .respondedJson( OK, "OK", """
+                [ {
+                  "created" : "2015-01-23T17:22:49.000Z",
+                  "description" : "last",
+                  "id" : "ZZZ",
+                  "modified" : "2015-01-23T17:22:49.000Z",
+                  "name" : "last"
+                } ]""" );
+        assertGet( accountFixture.httpUrl( "/organizations?offset=-1" ) )
+            .hasCode( BAD_REQUEST );
+        assertGet( accountFixture.httpUrl( "/organizations?limit=-1" ) )
+            .hasCode( BAD_REQUEST );
+        accountFixture.assertLogout();
+
+        accountFixture.assertOrgAdminLogin();
+        assertGet( accountFixture.httpUrl( "/organizations?offset=1" ) )
+            .respondedJson( OK, "OK", "[]" );
+        assertGet( accountFixture.httpUrl( "/organizations?limit=1" ) )
+            .respondedJson( OK, "OK", """
+                [ {
+                  "created" : "2010-01-23T17:22:49.000Z",
+                  "description" : "Default organization",
+                  "id" : "DFLT",
+                  "modified" : "2010-01-23T17:22:49.000Z",
+                  "name" : "Default"
+                } ]""" );
+    }
+
     @Test
     public void storeAccountOrgAdmin() {
         OrganizationData data = accountFixture.organizationStorage().storeOrganization( new Organization( "test", "test" ), Storage.MODIFIED_BY_SYSTEM );
@@ -6,15 +6,35 @@
 
 package oap.ws.account;
 
+import io.micrometer.core.instrument.Metrics;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import oap.json.Binder;
 import oap.mail.MailAddress;
 import oap.mail.Mailman;
 import oap.mail.Message;
 import oap.mail.Template;
 
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Account mails are rendered and handed over to the {@link Mailman} by a dispatcher thread, the request thread
+ * only queues them.
+ * <p>
+ * The queue is bounded. If it stays full for {@code offerTimeout} ms, the mail is sent on the calling thread,
+ * in a single attempt. The dispatcher takes up to {@code batchSize} mails at once and retries a failed mail {@code retries} times.
+ * The user bound to a mail is copied when the mail is queued, later changes of the user do not leak into it.
+ * Mails still queued on {@link #preStop()} are sent before the service stops.
+ * <p>
+ * Templates are resolved, falling back to the {@code .default} variant, and loaded once per xmail name.
+ */
 @Slf4j
 @Getter
 public class AccountMailman {
@@ -22,12 +42,69 @@ public class AccountMailman {
     private final String fromPersonal;
     private final String fromEmail;
     private final String confirmUrl;
+    private final int batchSize;
+    private final int retries;
+    private final long retryDelay;
+    private final long offerTimeout;
+    @Getter( AccessLevel.NONE )
+    private final ArrayBlockingQueue<PendingMail> queue;
+    @Getter( AccessLevel.NONE )
+    private volatile Thread dispatcher;
+    /**
+     * xmail name -> resolved and parsed template, shared by the sends and guarded by its own monitor while binding
+     */
+    @Getter( AccessLevel.NONE )
+    private final ConcurrentHashMap<String, Template> templates = new ConcurrentHashMap<>();
 
     public AccountMailman( @Nonnull Mailman mailman, @Nonnull String fromPersonal, @Nonnull String fromEmail, @Nonnull String confirmUrl ) {
+        this( mailman, fromPersonal, fromEmail, confirmUrl, 1024, 32, 3, 1000, 1000 );
+    }
+
+    /**
+     * @param queueSize    maximum number of mails waiting for the dispatcher
+     * @param batchSize    maximum number of mails taken from the queue at once
+     * @param retries      number of retries of a failed mail
+     * @param retryDelay   delay (ms) between the retries
+     * @param offerTimeout time (ms) to wait for a free slot in the queue before sending on the calling thread
+     */
+    public AccountMailman( @Nonnull Mailman mailman, @Nonnull String fromPersonal, @Nonnull String fromEmail, @Nonnull String confirmUrl,
+                           int queueSize, int batchSize, int retries, long retryDelay, long offerTimeout ) {
         this.mailman = mailman;
         this.fromPersonal = fromPersonal;
         this.fromEmail = fromEmail;
         this.confirmUrl = confirmUrl;
+        this.batchSize = batchSize;
+        this.retries = retries;
+        this.retryDelay = retryDelay;
+        this.offerTimeout = offerTimeout;
+        this.queue = new ArrayBlockingQueue<>( queueSize );
+
+        Metrics.gauge( "xenoss-account.mail.queue", queue, ArrayBlockingQueue::size );
+    }
+
+    public void start() {
+        dispatcher = new Thread( this::dispatch, "account-mailman" );
+        dispatcher.setDaemon( true );
+        dispatcher.start();
+    }
+
+    public void preStop() {
+        Thread thread = dispatcher;
+        dispatcher = null;
+
+        if( thread != null ) {
+            thread.interrupt();
+            try {
+                thread.join( TimeUnit.SECONDS.toMillis( 10 ) );
+            } catch( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        List<PendingMail> pending = new ArrayList<>();
+        queue.drainTo( pending );
+        log.info( "sending {} queued mail(s)", pending.size() );
+        pending.forEach( mail -> deliver( mail, retries ) );
     }
 
     public void sendInvitedEmail( @Nonnull UserData user ) {
@@ -39,30 +116,133 @@ public class AccountMailman {
     }
 
     public void sendRecoveryEmail( @Nonnull UserData user, String token ) {
-        Template template = Template.of( "/oap/ws/account/mail/user-recovery-password.default" )
-                .orElseGet( () -> Template.of( "/oap/ws/account/mail/user-recovery-password.default" ).orElseThrow() );
-        template.bind( "user", user.user );
-        template.bind( "recoveryUrl", confirmUrl + "/reset-password?token=" + token );
-        Message message = template.buildMessage();
-        message.from = MailAddress.of( fromPersonal, fromEmail );
-        message.to.add( MailAddress.of( user.user.firstName + " " + user.user.lastName, user.user.email ) );
-        log.trace( "sending recovery email {}", message );
-        mailman.send( message );
+        enqueue( new PendingMail( "user-recovery-password", user, Map.of(
+            "user", Binder.json.clone( user.user ),
+            "recoveryUrl", confirmUrl + "/reset-password?token=" + token ) ) );
     }
 
     private void sendUserCreatedEmail( @Nonnull UserData user, @Nonnull String xmail ) {
-        Template template = Template.of( "/oap/ws/account/mail/" + xmail )
-            .orElseGet( () -> Template.of( "/oap/ws/account/mail/" + xmail + ".default" ).orElseThrow() );
-        template.bind( "user", user.user );
-        template.bind( "confirmUrl", confirmUrl( user ) );
-        Message message = template.buildMessage();
-        message.from = MailAddress.of( fromPersonal, fromEmail );
-        message.to.add( MailAddress.of( user.user.firstName + " " + user.user.lastName, user.user.email ) );
-        log.trace( "sending mail {}", message );
-        mailman.send( message );
+        enqueue( new PendingMail( xmail, user, Map.of(
+            "user", Binder.json.clone( user.user ),
+            "confirmUrl", confirmUrl( user ) ) ) );
     }
 
     public String confirmUrl( UserData user ) {
         return confirmUrl + "/users/confirm/" + user.user.id + "?accessKey=" + user.getAccessKey() + "&apiKey=" + user.user.apiKey;
     }
+
+    private static Template resolveTemplate( String xmail ) {
+        log.debug( "loading mail template {}", xmail );
+
+        return Template.of( "/oap/ws/account/mail/" + xmail )
+            .orElseGet( () -> Template.of( "/oap/ws/account/mail/" + xmail + ".default" ).orElseThrow() );
+    }
+
+    private void enqueue( PendingMail mail ) {
+        if( dispatcher != null ) {
+            try {
+                if( queue.offer( mail, offerTimeout, TimeUnit.MILLISECONDS ) ) {
+                    log.trace( "queued mail {} to {}", mail.xmail, mail.toEmail );
+                    return;
+                }
+            } catch( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+
+            log.warn( "mail queue is full, sending mail {} to {} synchronously", mail.xmail, mail.toEmail );
+            Metrics.counter( "xenoss-account.mail", "status", "sync" ).increment();
+        }
+
+        deliver( mail, 0 );
+    }
+
+    private void dispatch() {
+        List<PendingMail> batch = new ArrayList<>( batchSize );
+
+        while( !Thread.currentThread().isInterrupted() ) {
+            try {
+                PendingMail mail = queue.poll( 1, TimeUnit.SECONDS );
+                if( mail == null ) {
+                    continue;
+                }
+
+                batch.add( mail );
+                queue.drainTo( batch, batchSize - 1 );
+                log.trace( "sending {} mail(s)", batch.size() );
+
+                for( PendingMail pendingMail : batch ) {
+                    deliver( pendingMail, retries );
+                }
+            } catch( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * @param maxRetries number of retries of a failed mail, the request thread sends in a single attempt
+     */
+    private void deliver( PendingMail mail, int maxRetries ) {
+        for( int attempt = 0; ; attempt++ ) {
+            try {
+                Message message = mail.buildMessage();
+                log.trace( "sending mail {}", message );
+                mailman.send( message );
+                Metrics.counter( "xenoss-account.mail", "status", "sent" ).increment();
+                return;
+            } catch( Exception e ) {
+                if( attempt >= maxRetries ) {
+                    log.error( "cannot send mail {} to {}", mail.xmail, mail.toEmail, e );
+                    Metrics.counter( "xenoss-account.mail", "status", "failed" ).increment();
+                    return;
+                }
+
+                log.warn( "cannot send mail {} to {}, retrying: {}", mail.xmail, mail.toEmail, e.getMessage() );
+                Metrics.counter( "xenoss-account.mail", "status", "retried" ).increment();
+
+                try {
+                    Thread.sleep( retryDelay );
+                } catch( InterruptedException ie ) {
+                    Thread.currentThread().interrupt();
+                    if( !queue.offer( mail ) ) {
+                        log.error( "cannot send mail {} to {}, interrupted", mail.xmail, mail.toEmail );
+                        Metrics.counter( "xenoss-account.mail", "status", "failed" ).increment();
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Mail parameters captured on the request thread, rendered by the dispatcher.
+     */
+    private final class PendingMail {
+        private final String xmail;
+        private final String toName;
+        private final String toEmail;
+        private final Map<String, Object> bindings;
+
+        private PendingMail( String xmail, UserData user, Map<String, Object> bindings ) {
+            this.xmail = xmail;
+            this.toName = user.user.firstName + " " + user.user.lastName;
+            this.toEmail = user.user.email;
+            this.bindings = bindings;
+        }
+
+        private Message buildMessage() {
+            Template template = templates.computeIfAbsent( xmail, AccountMailman::resolveTemplate );
+            Message message;
+            synchronized( template ) {
+                bindings.forEach( template::bind );
+                message = template.buildMessage();
+            }
+            message.from = MailAddress.of( fromPersonal, fromEmail );
+            message.to.add( MailAddress.of( toName, toEmail ) );
+
+            return message;
+        }
+    }
 }
@@ -47,6 +47,7 @@ import java.util.Optional;
 
 import static oap.http.Http.StatusCode.BAD_REQUEST;
 import static oap.http.Http.StatusCode.FORBIDDEN;
+import static oap.http.Http.StatusCode.SERVICE_UNAVAILABLE;
 import static oap.http.Http.StatusCode.UNAUTHORIZED;
 import static oap.http.server.nio.HttpServerExchange.HttpMethod.GET;
 import static oap.http.server.nio.HttpServerExchange.HttpMethod.POST;
@@ -116,7 +117,13 @@ public class AuthWS extends AbstractSecureWS {
                            @WsParam( from = SESSION ) Optional<oap.ws.sso.User> loggedUser,
                            Session session ) {
         loggedUser.ifPresent( user -> logout( loggedUser, session ) );
-        TokenInfo tokenInfo = oauthService.getOauthProvider( credentials.source ).getTokenInfo( credentials.accessToken ).orElse( null );
+        TokenInfo tokenInfo;
+        try {
+            tokenInfo = oauthService.getOauthProvider( credentials.source ).getTokenInfo( credentials.accessToken ).orElse( null );
+        } catch( OauthProviderUnavailableException e ) {
+            log.warn( e.getMessage() );
+            return notAuthenticatedResponse( SERVICE_UNAVAILABLE, "Identity provider is unavailable", sessionManager.cookieDomain );
+        }
         if( tokenInfo != null ) {
             Result<Authentication, AuthenticationFailure> result = authenticator.authenticate( tokenInfo.email, credentials.tfaCode );
             if( result.isSuccess() ) return authenticatedResponse( result.getSuccessValue(),
@@ -174,6 +181,6 @@ public class AuthWS extends AbstractSecureWS {
     public Optional<UserView> whoami( @WsParam( from = SESSION ) Optional<oap.ws.sso.User> loggedUser ) {
         return loggedUser
             .flatMap( user -> userStorage.getMetadata( user.getEmail() ) )
-            .map( Users::userMetadataToView );
+            .map( userStorage::view );
     }
 }
@@ -1,5 +1,7 @@
 package oap.ws.account;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import lombok.extern.slf4j.Slf4j;
 import oap.storage.Metadata;
 import oap.util.Result;
@@ -15,16 +17,16 @@ import oap.ws.sso.User;
 import oap.ws.sso.UserWithCookies;
 import oap.ws.sso.WsSecurity;
 import org.apache.commons.lang3.StringUtils;
-import org.joda.time.DateTime;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import static oap.ws.account.utils.TfaUtils.getTOTPCode;
 import static oap.ws.sso.AuthenticationFailure.TFA_REQUIRED;
 import static oap.ws.sso.AuthenticationFailure.UNAUTHENTICATED;
 import static oap.ws.sso.AuthenticationFailure.WRONG_TFA_CODE;
-import static org.joda.time.DateTimeZone.UTC;
 
 @Slf4j
 public class DefaultUserProvider implements oap.ws.sso.UserProvider {
@@ -34,17 +36,38 @@ public class DefaultUserProvider implements oap.ws.sso.UserProvider {
     private final SessionManager sessionManager;
     private final SecurityRoles roles;
     private final boolean useOrganizationLogin;
+    private final UserAccessTracker userAccessTracker;
+    private final JwtTokenCache jwtTokenCache;
+    private final TokenCounterStorage tokenCounterStorage;
+    /**
+     * client roles instance -> compiled merge of the server and client roles.
+     * Weak keys compare by identity: this is the fast path for callers passing the same instance on every request.
+     */
+    private final Cache<SecurityRoles, PermissionMatrix> permissionMatrices = CacheBuilder.newBuilder()
+        .weakKeys()
+        .build();
+    /**
+     * client roles content -> compiled merge, so that equal client roles built per request share one matrix
+     */
+    private final Cache<Map<String, Set<String>>, PermissionMatrix> permissionMatricesByRoles = CacheBuilder.newBuilder()
+        .maximumSize( 1024 )
+        .build();
 
     public DefaultUserProvider( UserStorage userStorage,
                                 JWTExtractor jwtExtractor, JwtTokenGenerator jwtTokenGenerator,
                                 SessionManager sessionManager,
-                                SecurityRoles roles, boolean useOrganizationLogin ) {
+                                SecurityRoles roles, boolean useOrganizationLogin,
+                                UserAccessTracker userAccessTracker, JwtTokenCache jwtTokenCache,
+                                TokenCounterStorage tokenCounterStorage ) {
         this.userStorage = userStorage;
         this.jwtExtractor = jwtExtractor;
         this.jwtTokenGenerator = jwtTokenGenerator;
         this.sessionManager = sessionManager;
         this.roles = roles;
         this.useOrganizationLogin = useOrganizationLogin;
+        this.userAccessTracker = userAccessTracker;
+        this.jwtTokenCache = jwtTokenCache;
+        this.tokenCounterStorage = tokenCounterStorage;
     }
 
     @Override
@@ -68,7 +91,9 @@ public class DefaultUserProvider implements oap.ws.sso.UserProvider {
             JWTExtractor.TokenStatus tokenStatus;
             if( accessToken.isPresent() ) {
                 token = JWTExtractor.extractBearerToken( accessToken.get() );
-                tokenStatus = jwtExtractor.verifyToken( token );
+                Result<JwtToken, JWTExtractor.TokenStatus> verified = jwtTokenCache.verify( token );
+                tokenStatus = verified.isSuccess() ? JWTExtractor.TokenStatus.VALID : verified.getFailureValue();
+                jwtToken = verified.isSuccess() ? verified.getSuccessValue() : null;
             } else {
                 log.trace( "accessToken = null" );
                 tokenStatus = JWTExtractor.TokenStatus.EXPIRED;
@@ -89,13 +114,14 @@ public class DefaultUserProvider implements oap.ws.sso.UserProvider {
                         Metadata<UserData> currentUserMetadata = userId != null ? userStorage.getMetadata( userId ).orElse( null ) : null;
                         UserData currentUser = currentUserMetadata != null ? currentUserMetadata.object : null;
 
-                        if( currentUser == null || currentUser.getCounter() != jwtRefreshToken.getCounter() ) {
+                        if( currentUser == null || tokenCounterStorage.counterOf( currentUser ) != jwtRefreshToken.getCounter() ) {
                             return Result.failure( "an outdated version of the refresh token" );
                         }
 
-                        Authentication.Token responseAccessToken = jwtTokenGenerator.generateAccessToken( currentUser );
-                        Authentication.Token responseRefreshAccessToken = jwtTokenGenerator.generateRefreshToken( currentUser );
-                        Authentication authentication = new Authentication( responseAccessToken, responseRefreshAccessToken, Users.userMetadataToView( currentUserMetadata ) );
+                        UserData tokenSubject = tokenCounterStorage.tokenSubject( currentUser );
+                        Authentication.Token responseAccessToken = jwtTokenGenerator.generateAccessToken( tokenSubject );
+                        Authentication.Token responseRefreshAccessToken = jwtTokenGenerator.generateRefreshToken( tokenSubject );
+                        Authentication authentication = new Authentication( responseAccessToken, responseRefreshAccessToken, userStorage.view( currentUserMetadata ) );
 
                         responseAccessCookie = Optional.of( SSO.createAccessAndRefreshTokensFromRefreshToken( authentication, sessionManager.cookieDomain, sessionManager.cookieSecure ) );
                         token = responseAccessToken.jwt;
@@ -107,7 +133,9 @@ public class DefaultUserProvider implements oap.ws.sso.UserProvider {
             if( tokenStatus != JWTExtractor.TokenStatus.VALID ) {
                 return Result.failure( "Invalid token: " + token + ", reason: " + tokenStatus );
             }
-            jwtToken = jwtExtractor.decodeJWT( token );
+            if( jwtToken == null ) {
+                jwtToken = jwtExtractor.decodeJWT( token );
+            }
             idOrEmail = jwtToken.getUserId();
             organization = jwtToken.getOrganizationId();
         } else {
@@ -136,7 +164,7 @@ public class DefaultUserProvider implements oap.ws.sso.UserProvider {
             return Result.failure( "User with email " + userData.getEmail() + " is not confirmed" );
         }
 
-        if( jwtToken != null && userData.getCounter() != jwtToken.getCounter() ) {
+        if( jwtToken != null && tokenCounterStorage.counterOf( userData ) != jwtToken.getCounter() ) {
             return Result.failure( "an outdated version of the token" );
         }
 
@@ -146,21 +174,27 @@ public class DefaultUserProvider implements oap.ws.sso.UserProvider {
                 return Result.failure( "user doesn't have access to realm '" + realm + "'" );
             }
 
-            SecurityRoles allRoles = roles.merge( clientRoles );
+            PermissionMatrix allRoles = permissionMatrix( clientRoles );
             if( !allRoles.granted( role, wssPermissions ) ) {
                 return Result.failure( "user doesn't have required permissions: '" + List.of( wssPermissions ) + "', user permissions: '" + allRoles.permissionsOf( role ) + "'" );
             }
         }
 
-        userStorage.update( userData.getId(), ud -> {
-            ud.lastAccess = DateTime.now( UTC );
-
-            return ud;
-        }, userData.getEmail() );
+        userAccessTracker.touch( userData );
 
         return Result.success( new UserWithCookies( userData, responseAccessCookie.map( c -> c.accessToken ), responseAccessCookie.map( c -> c.refreshToken ) ) );
     }
 
+    PermissionMatrix permissionMatrix( SecurityRoles clientRoles ) {
+        PermissionMatrix matrix = permissionMatrices.getIfPresent( clientRoles );
+        if( matrix == null ) {
+            matrix = permissionMatricesByRoles.asMap()
+                .computeIfAbsent( PermissionMatrix.contentOf( clientRoles ), content -> PermissionMatrix.compile( roles.merge( clientRoles ) ) );
+            permissionMatrices.put( clientRoles, matrix );
+        }
+
+        return matrix;
+    }
 
     private boolean hasRealmMismatchError( String organization, boolean useOrganizationLogin, String realmString ) {
         log.trace( "hasRealmMismatchError organization {} useOrganizationLogin {} realmString {}", organization, useOrganizationLogin, realmString );
@@ -195,10 +229,6 @@ public class DefaultUserProvider implements oap.ws.sso.UserProvider {
         if( authenticated.isPresent() ) {
             UserData userData = authenticated.get();
             if( !userData.user.tfaEnabled ) {
-                userStorage.update( idOrEmail, user -> {
-                    user.lastLogin = DateTime.now( UTC );
-                    return user;
-                }, userData.getEmail() );
                 return Result.success( userData );
             } else {
                 if( tfaCode.isEmpty() ) {
@@ -214,6 +244,6 @@ public class DefaultUserProvider implements oap.ws.sso.UserProvider {
 
     @Override
     public Optional<? extends User> getAuthenticatedByApiKey( String accessKey, String apiKey ) {
-        return userStorage.select().filter( u -> u.authenticate( accessKey, apiKey ) ).findAny();
+        return userStorage.getByApiKey( accessKey, apiKey );
     }
 }
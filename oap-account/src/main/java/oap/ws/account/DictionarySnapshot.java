@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) Xenoss
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+
+package oap.ws.account;
+
+import lombok.extern.slf4j.Slf4j;
+import oap.storage.MemoryStorage;
+import oap.storage.Storage;
+import org.joda.time.DateTimeUtils;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Encoded dictionary, rebuilt lazily on the first request after a change of the storages it is built from.
+ * <p>
+ * Every snapshot carries an ETag and a Last-Modified stamp, so unchanged polls can be answered with 304.
+ * The ETag is unique per node: a node restart or another node behind a balancer only costs a full response.
+ * Last-Modified has a second precision, so it is only used once the snapshot is at least a second old,
+ * a later change within the same second would be hidden otherwise.
+ */
+@Slf4j
+final class DictionarySnapshot {
+    private static final long NODE = DateTimeUtils.currentTimeMillis();
+
+    private final String name;
+    private final Supplier<byte[]> encoder;
+    private final AtomicLong version = new AtomicLong();
+    private volatile long lastModified = DateTimeUtils.currentTimeMillis();
+    private volatile Snapshot snapshot;
+
+    DictionarySnapshot( String name, Supplier<byte[]> encoder ) {
+        this.name = name;
+        this.encoder = encoder;
+    }
+
+    /**
+     * @return this, the snapshot is rebuilt after any change of the storage
+     */
+    <D> DictionarySnapshot dependsOn( MemoryStorage<String, D> storage ) {
+        storage.addDataListener( new Storage.DataListener<>() {
+            @Override
+            public void added( List<IdObject<String, D>> objects ) {
+                invalidate();
+            }
+
+            @Override
+            public void updated( List<IdObject<String, D>> objects ) {
+                invalidate();
+            }
+
+            @Override
+            public void deleted( List<IdObject<String, D>> objects ) {
+                invalidate();
+            }
+        } );
+
+        return this;
+    }
+
+    void invalidate() {
+        lastModified = DateTimeUtils.currentTimeMillis();
+        version.incrementAndGet();
+    }
+
+    Snapshot get() {
+        long version = this.version.get();
+        Snapshot snapshot = this.snapshot;
+        if( snapshot != null && snapshot.version == version ) {
+            return snapshot;
+        }
+
+        synchronized( this ) {
+            version = this.version.get();
+            snapshot = this.snapshot;
+            if( snapshot != null && snapshot.version == version ) {
+                return snapshot;
+            }
+
+            long lastModified = this.lastModified;
+            byte[] bytes = encoder.get();
+            log.debug( "dictionary {} version {}: {} bytes", name, version, bytes.length );
+
+            snapshot = new Snapshot( version, bytes, "\"" + Long.toHexString( NODE ) + "-" + version + "\"", lastModified );
+            this.snapshot = snapshot;
+
+            return snapshot;
+        }
+    }
+
+    static final class Snapshot {
+        final long version;
+        final byte[] bytes;
+        final String etag;
+        final long lastModified;
+
+        private Snapshot( long version, byte[] bytes, String etag, long lastModified ) {
+            this.version = version;
+            this.bytes = bytes;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        private boolean lastModifiedSettled() {
+            return DateTimeUtils.currentTimeMillis() - lastModified >= 1000;
+        }
+
+        Optional<String> lastModifiedHeader() {
+            return lastModifiedSettled()
+                ? Optional.of( DateTimeFormatter.RFC_1123_DATE_TIME.format( ZonedDateTime.ofInstant( Instant.ofEpochMilli( lastModified ), ZoneOffset.UTC ) ) )
+                : Optional.empty();
+        }
+
+        boolean notModified( Optional<String> ifNoneMatch, Optional<String> ifModifiedSince ) {
+            if( ifNoneMatch.isPresent() ) {
+                return ifNoneMatch.get().contains( etag ) || "*".equals( ifNoneMatch.get().trim() );
+            }
+
+            if( ifModifiedSince.isPresent() && lastModifiedSettled() ) {
+                try {
+                    long since = ZonedDateTime.parse( ifModifiedSince.get(), DateTimeFormatter.RFC_1123_DATE_TIME ).toInstant().toEpochMilli();
+                    return lastModified / 1000 <= since / 1000;
+                } catch( DateTimeParseException e ) {
+                    return false;
+                }
+            }
+
+            return false;
+        }
+    }
+}
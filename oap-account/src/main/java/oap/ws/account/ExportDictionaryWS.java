@@ -1,52 +1,95 @@
 package oap.ws.account;
 
 import oap.http.Http.StatusCode;
-import oap.logstream.formats.rowbinary.RowBinaryOutputStream;
-import oap.template.Types;
-import oap.util.Throwables;
 import oap.ws.Response;
 import oap.ws.WsMethod;
 import oap.ws.WsParam;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static oap.ws.WsParam.From.HEADER;
+import static oap.ws.WsParam.From.PATH;
 
 public class ExportDictionaryWS {
+    private static final RowBinaryDictionary<OrganizationData> ORGANIZATIONS = new RowBinaryDictionary<>(
+        List.of( "id", "name" ),
+        List.of( o -> o.organization.id, o -> o.organization.name ) );
+    private static final RowBinaryDictionary<String[]> ACCOUNTS = new RowBinaryDictionary<>(
+        List.of( "organization_id", "id", "name" ),
+        List.of( r -> r[0], r -> r[1], r -> r[2] ) );
+    private static final RowBinaryDictionary<String[]> USER_ACCOUNTS = new RowBinaryDictionary<>(
+        List.of( "user_id", "organization_id", "account_id", "role" ),
+        List.of( r -> r[0], r -> r[1], r -> r[2], r -> r[3] ) );
+
     private final OrganizationStorage organizationStorage;
+    private final UserStorage userStorage;
+    private final Map<String, DictionarySnapshot> dictionaries;
 
-    public ExportDictionaryWS( OrganizationStorage organizationStorage ) {
+    public ExportDictionaryWS( OrganizationStorage organizationStorage, UserStorage userStorage ) {
         this.organizationStorage = organizationStorage;
+        this.userStorage = userStorage;
+
+        this.dictionaries = Map.of(
+            "organizations", new DictionarySnapshot( "organizations", this::organizations ).dependsOn( organizationStorage ),
+            "accounts", new DictionarySnapshot( "accounts", this::accounts ).dependsOn( organizationStorage ),
+            "user_accounts", new DictionarySnapshot( "user_accounts", this::userAccounts ).dependsOn( userStorage )
+        );
+    }
+
+    private byte[] organizations() {
+        List<OrganizationData> organizations = organizationStorage
+            .select()
+            .sorted( Comparator.comparing( o -> o.organization.name ) )
+            .toList();
+
+        return ORGANIZATIONS.encode( organizations );
+    }
+
+    private byte[] accounts() {
+        List<String[]> accounts = organizationStorage
+            .select()
+            .sorted( Comparator.comparing( o -> o.organization.id ) )
+            .flatMap( o -> o.accounts.stream().map( a -> new String[] { o.organization.id, a.id, a.name } ) )
+            .toList();
+
+        return ACCOUNTS.encode( accounts );
+    }
+
+    /**
+     * Access to all the accounts of an organization is exported as account id {@code *}.
+     */
+    private byte[] userAccounts() {
+        List<String[]> userAccounts = userStorage
+            .select()
+            .sorted( Comparator.comparing( UserData::getId ) )
+            .flatMap( u -> u.accounts.entrySet().stream()
+                .flatMap( e -> e.getValue().stream()
+                    .map( accountId -> new String[] { u.getId(), e.getKey(), accountId, u.roles.get( e.getKey() ) } ) ) )
+            .toList();
+
+        return USER_ACCOUNTS.encode( userAccounts );
     }
 
     @WsMethod( path = "/{dictionaryName}" )
-    public Response getDictionary( @WsParam( from = WsParam.From.PATH ) String dictionaryName ) {
-        switch( dictionaryName ) {
-            case "organizations" -> {
-                try {
-                    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                    RowBinaryOutputStream rowBinaryOutputStream = new RowBinaryOutputStream( baos, List.of( "id", "name" ), new byte[][] { new byte[] { Types.STRING.id }, new byte[] { Types.STRING.id } } );
-                    organizationStorage
-                        .select()
-                        .sorted( Comparator.comparing( o -> o.organization.name ) )
-                        .forEach( data -> {
-                            try {
-                                rowBinaryOutputStream.writeString( data.organization.id );
-                                rowBinaryOutputStream.writeString( data.organization.name );
-                            } catch( IOException e ) {
-                                throw Throwables.propagate( e );
-                            }
-                        } );
-
-                    return new Response( StatusCode.OK ).withBody( baos.toByteArray(), true );
-                } catch( IOException e ) {
-                    throw Throwables.propagate( e );
-                }
-            }
-            default -> {
-                return Response.notFound();
-            }
+    public Response getDictionary( @WsParam( from = PATH ) String dictionaryName,
+                                   @WsParam( from = HEADER, name = "If-None-Match" ) Optional<String> ifNoneMatch,
+                                   @WsParam( from = HEADER, name = "If-Modified-Since" ) Optional<String> ifModifiedSince ) {
+        DictionarySnapshot dictionary = dictionaries.get( dictionaryName );
+        if( dictionary == null ) {
+            return Response.notFound();
         }
+
+        DictionarySnapshot.Snapshot snapshot = dictionary.get();
+        Response response = ( snapshot.notModified( ifNoneMatch, ifModifiedSince )
+            ? new Response( StatusCode.NOT_MODIFIED )
+            : new Response( StatusCode.OK ).withBody( snapshot.bytes, true ) )
+            .withHeader( "ETag", snapshot.etag );
+
+        Optional<String> lastModified = snapshot.lastModifiedHeader();
+
+        return lastModified.isPresent() ? response.withHeader( "Last-Modified", lastModified.get() ) : response;
     }
 }
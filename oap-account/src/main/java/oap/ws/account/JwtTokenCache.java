@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) Xenoss
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+
+package oap.ws.account;
+
+import com.auth0.jwt.JWT;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import oap.util.Result;
+import oap.ws.sso.JWTExtractor;
+import oap.ws.sso.JwtToken;
+import org.joda.time.DateTimeUtils;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Cache of verified and decoded access tokens keyed by the token digest.
+ * <p>
+ * A token is verified and decoded once per node and served from the cache until it expires.
+ * Only valid tokens are cached.
+ */
+@Slf4j
+public class JwtTokenCache {
+    private final JWTExtractor jwtExtractor;
+    private final Cache<String, VerifiedToken> tokens;
+
+    /**
+     * @param maximumSize maximum number of cached tokens
+     * @param ttl         upper bound (ms) of the time a token stays in the cache, should not be less than the access token expiration
+     */
+    public JwtTokenCache( JWTExtractor jwtExtractor, long maximumSize, long ttl ) {
+        this.jwtExtractor = jwtExtractor;
+        this.tokens = CacheBuilder.newBuilder()
+            .maximumSize( maximumSize )
+            .expireAfterWrite( ttl, TimeUnit.MILLISECONDS )
+            .recordStats()
+            .build();
+
+        GuavaCacheMetrics.monitor( Metrics.globalRegistry, tokens, "xenoss-account.jwt" );
+    }
+
+    public Result<JwtToken, JWTExtractor.TokenStatus> verify( String token ) {
+        String key = Hashing.sha256().hashString( token, UTF_8 ).toString();
+        long now = DateTimeUtils.currentTimeMillis();
+
+        VerifiedToken verifiedToken = tokens.getIfPresent( key );
+        if( verifiedToken != null ) {
+            if( now < verifiedToken.expiresAt ) {
+                return Result.success( verifiedToken.jwtToken );
+            }
+
+            tokens.invalidate( key );
+            return Result.failure( JWTExtractor.TokenStatus.EXPIRED );
+        }
+
+        JWTExtractor.TokenStatus tokenStatus = jwtExtractor.verifyToken( token );
+        if( tokenStatus != JWTExtractor.TokenStatus.VALID ) {
+            return Result.failure( tokenStatus );
+        }
+
+        JwtToken jwtToken = jwtExtractor.decodeJWT( token );
+        Date expiresAt = JWT.decode( token ).getExpiresAt();
+        if( expiresAt != null ) {
+            tokens.put( key, new VerifiedToken( jwtToken, expiresAt.getTime() ) );
+        }
+
+        return Result.success( jwtToken );
+    }
+
+    private static final class VerifiedToken {
+        private final JwtToken jwtToken;
+        private final long expiresAt;
+
+        private VerifiedToken( JwtToken jwtToken, long expiresAt ) {
+            this.jwtToken = jwtToken;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -26,6 +26,7 @@
 package oap.ws.account;
 
 import lombok.extern.slf4j.Slf4j;
+import oap.storage.Metadata;
 import oap.util.Result;
 import oap.ws.sso.Authentication;
 import oap.ws.sso.AuthenticationFailure;
@@ -47,9 +48,11 @@ public class JwtUserAuthenticator implements Authenticator {
     private final JWTExtractor jwtExtractor;
     private final UserProvider userProvider;
     private final UserStorage userStorage;
+    private final TokenCounterStorage tokenCounterStorage;
 
-    public JwtUserAuthenticator( UserStorage userStorage, UserProvider userProvider, JwtTokenGenerator jwtTokenGenerator, JWTExtractor jwtExtractor ) {
+    public JwtUserAuthenticator( UserStorage userStorage, TokenCounterStorage tokenCounterStorage, UserProvider userProvider, JwtTokenGenerator jwtTokenGenerator, JWTExtractor jwtExtractor ) {
         this.userStorage = userStorage;
+        this.tokenCounterStorage = Objects.requireNonNull( tokenCounterStorage );
         this.userProvider = Objects.requireNonNull( userProvider );
         this.jwtTokenGenerator = Objects.requireNonNull( jwtTokenGenerator );
         this.jwtExtractor = Objects.requireNonNull( jwtExtractor );
@@ -95,7 +98,7 @@ public class JwtUserAuthenticator implements Authenticator {
         }
         User user = authResult.getSuccessValue();
         try {
-            Authentication authentication = generateTokenWithOrgId( user, user.getDefaultOrganization().orElse( "" ) );
+            Authentication authentication = generateTokenWithOrgId( user, user.getDefaultOrganization().orElse( "" ), true );
             return Result.success( authentication );
         } catch( Exception exception ) {
             log.error( "JWT creation failed {}", exception.getMessage() );
@@ -105,7 +108,7 @@ public class JwtUserAuthenticator implements Authenticator {
 
     private Result<Authentication, AuthenticationFailure> getAuthenticationTokens( User user, String orgId ) {
         try {
-            Authentication authentication = generateTokenWithOrgId( user, orgId );
+            Authentication authentication = generateTokenWithOrgId( user, orgId, false );
             return Result.success( authentication );
         } catch( Exception exception ) {
             log.error( "JWT creation failed {}", exception.getMessage() );
@@ -114,25 +117,38 @@ public class JwtUserAuthenticator implements Authenticator {
     }
 
     private Authentication generateTokens( User user ) {
-        incUserCounter( user );
+        Metadata<UserData> userMetadata = incUserCounter( user, false );
+        UserData userData = tokenCounterStorage.tokenSubject( userMetadata.object );
 
-        Authentication.Token accessToken = jwtTokenGenerator.generateAccessToken( user );
-        Authentication.Token refreshToken = jwtTokenGenerator.generateRefreshToken( user );
+        Authentication.Token accessToken = jwtTokenGenerator.generateAccessToken( userData );
+        Authentication.Token refreshToken = jwtTokenGenerator.generateRefreshToken( userData );
         log.trace( "generating authentication for user {} / {} -> {} / {}", user.getId(), user.getEmail(), accessToken, refreshToken );
-        return new Authentication( accessToken, refreshToken, Users.userMetadataToView( userStorage.getMetadata( user.getId() ).get() ) );
+        return new Authentication( accessToken, refreshToken, userStorage.view( userMetadata ) );
     }
 
-    private void incUserCounter( User user ) {
-        userStorage.update( user.getId(), UserData::incCounter, user.getId() );
+    /**
+     * The counter is bumped on every login and refresh, so that a user has a single live session.
+     *
+     * @param login if true, the login is recorded in the user storage
+     * @return the user metadata, so that the view can be built without another lookup
+     */
+    private Metadata<UserData> incUserCounter( User user, boolean login ) {
+        Metadata<UserData> userMetadata = ( login
+            ? userStorage.login( user.getId(), user.getId() )
+            : userStorage.getMetadata( user.getId() ) ).orElseThrow();
+        tokenCounterStorage.incrementAndGet( userMetadata.object );
+
+        return userMetadata;
     }
 
-    private Authentication generateTokenWithOrgId( User user, String activeOrgId ) {
-        incUserCounter( user );
+    private Authentication generateTokenWithOrgId( User user, String activeOrgId, boolean login ) {
+        Metadata<UserData> userMetadata = incUserCounter( user, login );
+        UserData userData = tokenCounterStorage.tokenSubject( userMetadata.object );
 
-        Authentication.Token accessToken = jwtTokenGenerator.generateAccessTokenWithActiveOrgId( user, activeOrgId );
-        Authentication.Token refreshToken = jwtTokenGenerator.generateRefreshToken( user );
+        Authentication.Token accessToken = jwtTokenGenerator.generateAccessTokenWithActiveOrgId( userData, activeOrgId );
+        Authentication.Token refreshToken = jwtTokenGenerator.generateRefreshToken( userData );
         log.trace( "generating authentication for user {} / {} -> {} / {}", user.getId(), user.getEmail(), accessToken, refreshToken );
-        return new Authentication( accessToken, refreshToken, Users.userMetadataToView( userStorage.getMetadata( user.getId() ).get() ) );
+        return new Authentication( accessToken, refreshToken, userStorage.view( userMetadata ) );
     }
 
     public Result<Authentication, AuthenticationFailure> refreshToken( String refreshToken, Optional<String> orgId ) {
@@ -161,12 +177,13 @@ public class JwtUserAuthenticator implements Authenticator {
         }
         String activeOrgId = orgId.orElse( user.getDefaultOrganization().orElse( "" ) );
 
-        incUserCounter( user );
+        Metadata<UserData> userMetadata = incUserCounter( user, false );
+        UserData userData = tokenCounterStorage.tokenSubject( userMetadata.object );
 
         var authentication = new Authentication(
-            jwtTokenGenerator.generateAccessTokenWithActiveOrgId( user, activeOrgId ),
-            jwtTokenGenerator.generateRefreshToken( user ),
-            Users.userMetadataToView( userStorage.getMetadata( user.getId() ).get() )
+            jwtTokenGenerator.generateAccessTokenWithActiveOrgId( userData, activeOrgId ),
+            jwtTokenGenerator.generateRefreshToken( userData ),
+            userStorage.view( userMetadata )
         );
 
         return Result.success( authentication );
@@ -201,6 +218,6 @@ public class JwtUserAuthenticator implements Authenticator {
 
     @Override
     public void invalidate( String email ) {
-        userStorage.update( email, UserData::incCounter, email );
+        userStorage.get( email ).ifPresent( tokenCounterStorage::incrementAndGet );
     }
 }
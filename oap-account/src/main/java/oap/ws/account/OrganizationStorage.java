@@ -11,6 +11,8 @@ import lombok.extern.slf4j.Slf4j;
 import oap.id.Identifier;
 import oap.storage.MemoryStorage;
 import oap.storage.Metadata;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 
 import java.util.Optional;
 
@@ -22,6 +24,7 @@ public class OrganizationStorage extends MemoryStorage<String, OrganizationData>
     public final String defaultOrganizationName;
     public final String defaultOrganizationDescription;
     public final boolean defaultOrganizationReadOnly;
+    private final ViewCache<OrganizationData, OrganizationView> views = new ViewCache<>( o -> o.organization.id, OrganizationStorage::toView );
 
     /**
      * @param defaultOrganizationId          default organization id
@@ -42,6 +45,19 @@ public class OrganizationStorage extends MemoryStorage<String, OrganizationData>
         this.defaultOrganizationName = defaultOrganizationName;
         this.defaultOrganizationDescription = defaultOrganizationDescription;
         this.defaultOrganizationReadOnly = defaultOrganizationReadOnly;
+
+        addDataListener( views );
+    }
+
+    private static OrganizationView toView( Metadata<OrganizationData> metadata ) {
+        OrganizationData organizationData = metadata.object;
+        Organization organization = organizationData.organization;
+
+        return new OrganizationView(
+            organization.id, organization.name, organization.description,
+            organizationData.accounts.stream().toList(),
+            new DateTime( metadata.created, DateTimeZone.UTC ),
+            new DateTime( metadata.modified, DateTimeZone.UTC ) );
     }
 
     public void start() {
@@ -67,6 +83,13 @@ public class OrganizationStorage extends MemoryStorage<String, OrganizationData>
             changedBy );
     }
 
+    /**
+     * @return the view of the organization, cached until the organization changes
+     */
+    public OrganizationView view( Metadata<OrganizationData> metadata ) {
+        return views.get( metadata );
+    }
+
     public Optional<Metadata<OrganizationData>> storeAccount( String organizationId, Account account, String changedBy ) {
         log.debug( "storeAccount organizationId {} account {}", organizationId, account );
 
@@ -24,8 +24,6 @@ import oap.ws.validate.ValidationErrors;
 import oap.ws.validate.WsValidate;
 import oap.ws.validate.WsValidateJson;
 import org.apache.http.client.utils.URIBuilder;
-import org.joda.time.DateTime;
-import org.joda.time.DateTimeZone;
 
 import javax.annotation.Nonnull;
 import java.net.URI;
@@ -108,17 +106,6 @@ public class OrganizationWS extends AbstractWS {
         this.roles = roles;
     }
 
-    private static OrganizationView organizationMetadataToView( Metadata<OrganizationData> metadata ) {
-        OrganizationData organizationData = metadata.object;
-        Organization organization = organizationData.organization;
-
-        return new OrganizationView(
-            organization.id, organization.name, organization.description,
-            organizationData.accounts.stream().toList(),
-            new DateTime( metadata.created, DateTimeZone.UTC ),
-            new DateTime( metadata.modified, DateTimeZone.UTC ) );
-    }
-
     @WsMethod( method = POST, path = "/{organizationId}" )
     @WsSecurity( realm = ORGANIZATION_ID, permissions = { ORGANIZATION_UPDATE } )
     @WsValidate( "validateOrganizationAccess" )
@@ -145,16 +132,38 @@ public class OrganizationWS extends AbstractWS {
     public Optional<OrganizationView> get( @WsParam( from = PATH ) String organizationId, @WsParam( from = SESSION ) UserData loggedUser ) {
         return organizationStorage
             .getMetadata( organizationId )
-            .map( OrganizationWS::organizationMetadataToView );
+            .map( organizationStorage::view );
     }
 
     @WsMethod( method = GET, path = "/" )
-    @WsValidate( { "validateUserLoggedIn" } )
+    @WsValidate( { "validateUserLoggedIn", "validatePage" } )
     @WsSecurity( realm = USER, permissions = {} )
-    public List<OrganizationView> list( @WsParam( from = SESSION ) Optional<UserData> loggedUser ) {
-        return organizationStorage.selectMetadata()
-            .filter( o -> canAccessOrganization( loggedUser.get(), o.object.organization.id ) )
-            .map( OrganizationWS::organizationMetadataToView )
+    public List<OrganizationView> list( @WsParam( from = SESSION ) Optional<UserData> loggedUser,
+                                        @WsParam( from = QUERY ) Optional<Integer> offset,
+                                        @WsParam( from = QUERY ) Optional<Integer> limit ) {
+        UserData user = loggedUser.get();
+
+        if( isSystem( user ) ) {
+            Stream<Metadata<OrganizationData>> organizations = organizationStorage.selectMetadata();
+            if( offset.isPresent() || limit.isPresent() ) {
+                organizations = organizations.sorted( Comparator.comparing( o -> o.object.organization.id ) );
+            }
+            return page( organizations, offset, limit );
+        }
+
+        return page( Stream.of( user.roles.keySet().stream().sorted() )
+            .flatMap( organizationId -> organizationStorage.getMetadata( organizationId ).stream() ), offset, limit );
+    }
+
+    /**
+     * Only the requested page is converted to views. Pages are ordered by organization id, a SYSTEM user without
+     * offset and limit gets all organizations in the storage order.
+     */
+    private List<OrganizationView> page( Stream<Metadata<OrganizationData>> organizations, Optional<Integer> offset, Optional<Integer> limit ) {
+        return organizations
+            .skip( offset.orElse( 0 ) )
+            .limit( limit.orElse( Integer.MAX_VALUE ) )
+            .map( organizationStorage::view )
             .toList();
     }
 
@@ -166,7 +175,7 @@ public class OrganizationWS extends AbstractWS {
                                                     @WsParam( from = SESSION ) UserData loggedUser ) {
         return organizationStorage
             .storeAccount( organizationId, account, loggedUser.getId() )
-            .map( OrganizationWS::organizationMetadataToView );
+            .map( organizationStorage::view );
     }
 
     @WsMethod( method = GET, path = "/{organizationId}/accounts" )
@@ -194,7 +203,7 @@ public class OrganizationWS extends AbstractWS {
                                                 @WsParam( from = PATH ) String idOrEmail,
                                                 @WsParam( from = QUERY ) String accountId,
                                                 @WsParam( from = SESSION ) UserData loggedUser ) {
-        return userStorage.addAccountToUser( idOrEmail, organizationId, accountId, loggedUser.getId() ).map( Users::userMetadataToView );
+        return userStorage.addAccountToUser( idOrEmail, organizationId, accountId, loggedUser.getId() ).map( userStorage::view );
     }
 
     @WsMethod( method = POST, path = "/{organizationId}/users/{idOrEmail}/accounts/remove" )
@@ -203,7 +212,7 @@ public class OrganizationWS extends AbstractWS {
                                                      @WsParam( from = PATH ) String idOrEmail,
                                                      @WsParam( from = QUERY ) String accountId,
                                                      @WsParam( from = SESSION ) UserData loggedUser ) {
-        return userStorage.removeAccountFromUser( idOrEmail, organizationId, accountId, loggedUser.getId() ).map( Users::userMetadataToView );
+        return userStorage.removeAccountFromUser( idOrEmail, organizationId, accountId, loggedUser.getId() ).map( userStorage::view );
     }
 
     @WsMethod( method = GET, path = "/{organizationId}/users" )
@@ -212,7 +221,7 @@ public class OrganizationWS extends AbstractWS {
     public List<UserView> users( @WsParam( from = PATH ) String organizationId,
                                  @WsParam( from = SESSION ) UserData loggedUser ) {
         return Stream.of( userStorage.getUsers( organizationId ) )
-            .map( Users::userMetadataToView )
+            .map( userStorage::view )
             .sorted( Comparator.comparing( UserView::getEmail ) )
             .toList();
     }
@@ -228,9 +237,9 @@ public class OrganizationWS extends AbstractWS {
         if( user.create ) {
             Metadata<UserData> userCreated = userStorage.createUser( user, role.map( r -> new HashMap<>( Map.of( organizationId, r ) ) ).orElse( null ), loggedUser.getId() );
             mailman.sendInvitedEmail( userCreated.object );
-            return Users.userMetadataToView( userCreated );
+            return userStorage.view( userCreated );
         }
-        return Users.userMetadataToView( userStorage.updateUser( user.email, u -> u.update( user.firstName, user.lastName, user.tfaEnabled, user.ext ), loggedUser.getId() )
+        return userStorage.view( userStorage.updateUser( user.email, u -> u.update( user.firstName, user.lastName, user.tfaEnabled, user.ext ), loggedUser.getId() )
             .orElseThrow() );
     }
 
@@ -243,28 +252,34 @@ public class OrganizationWS extends AbstractWS {
         user.defaultOrganization = orgId;
         Metadata<UserData> userCreated = userStorage.createUser( user, new HashMap<>( Map.of( orgId, ORGANIZATION_ADMIN ) ), user.email );
         mailman.sendRegisteredEmail( userCreated.object );
-        return Users.userMetadataToView( userCreated );
+        return userStorage.view( userCreated );
     }
 
 
     @WsMethod( method = POST, path = "/register/oauth" )
     @WsValidate( "validateUserRegistered" )
-    public Optional<UserView> register(
+    public Response register(
         @WsParam( from = QUERY ) String organizationName,
         @WsParam( from = SESSION ) UserData loggedUser,
         String externalOauthToken, OauthProvider source, Ext ext ) {
-        OrganizationData organizationData = organizationStorage.storeOrganization( new Organization( organizationName ), loggedUser.getId() );
-        final String orgId = organizationData.organization.id;
-        TokenInfo tokenInfo = oauthService.getOauthProvider( source ).getTokenInfo( externalOauthToken ).orElse( null );
+        TokenInfo tokenInfo;
+        try {
+            tokenInfo = oauthService.getOauthProvider( source ).getTokenInfo( externalOauthToken ).orElse( null );
+        } catch( OauthProviderUnavailableException e ) {
+            log.warn( e.getMessage() );
+            return new Response( Http.StatusCode.SERVICE_UNAVAILABLE ).withReasonPhrase( "Identity provider is unavailable" );
+        }
         if( tokenInfo != null ) {
+            OrganizationData organizationData = organizationStorage.storeOrganization( new Organization( organizationName ), loggedUser.getId() );
+            final String orgId = organizationData.organization.id;
             final User user = new User( null, tokenInfo.email, tokenInfo.firstName, tokenInfo.lastName, null, true, false );
             user.ext = ext;
             user.defaultOrganization = orgId;
             Metadata<UserData> userCreated = userStorage.createUser( user, new HashMap<>( Map.of( orgId, ORGANIZATION_ADMIN ) ), loggedUser.getId() );
             mailman.sendRegisteredEmail( userCreated.object );
-            return Optional.of( Users.userMetadataToView( userCreated ) );
+            return Response.jsonOk().withBody( userStorage.view( userCreated ) );
         }
-        return Optional.empty();
+        return Response.notFound();
     }
 
     @WsMethod( method = POST, path = "/{organizationId}/users/passwd" )
@@ -273,7 +288,7 @@ public class OrganizationWS extends AbstractWS {
     public Optional<UserView> passwd( @WsParam( from = PATH ) String organizationId,
                                       @WsParam( from = BODY ) @WsValidateJson( schema = Passwd.SCHEMA ) Passwd passwd,
                                       @WsParam( from = SESSION ) UserData loggedUser ) {
-        return userStorage.passwd( passwd.email, passwd.password, loggedUser.getId() ).map( Users::userMetadataToView );
+        return userStorage.passwd( passwd.email, passwd.password, loggedUser.getId() ).map( userStorage::view );
     }
 
     @WsMethod( method = GET, path = "/{organizationId}/users/apikey/{idOrEmail}",
@@ -295,7 +310,7 @@ public class OrganizationWS extends AbstractWS {
                                    @WsParam( from = SESSION ) UserData loggedUser ) {
 
 
-        return userStorage.ban( idOrEmail, true, loggedUser.getId() ).map( Users::userMetadataToView );
+        return userStorage.ban( idOrEmail, true, loggedUser.getId() ).map( userStorage::view );
     }
 
     @WsMethod( method = GET, path = "/{organizationId}/users/delete/{idOrEmail}" )
@@ -311,7 +326,7 @@ public class OrganizationWS extends AbstractWS {
     public Optional<UserView> unban( @WsParam( from = PATH ) String organizationId,
                                      @WsParam( from = PATH ) String idOrEmail,
                                      @WsParam( from = SESSION ) UserData loggedUser ) {
-        return userStorage.ban( idOrEmail, false, loggedUser.getId() ).map( Users::userMetadataToView );
+        return userStorage.ban( idOrEmail, false, loggedUser.getId() ).map( userStorage::view );
     }
 
     @WsMethod( method = GET, path = "/users/confirm/{idOrEmail}" )
@@ -371,7 +386,7 @@ public class OrganizationWS extends AbstractWS {
     public Optional<UserView> changeDefaultOrganization( @WsParam( from = PATH ) String idOrEmail,
                                                          @WsParam( from = PATH ) String organizationId,
                                                          @WsParam( from = SESSION ) UserData loggedUser ) {
-        return userStorage.updateUser( idOrEmail, u -> u.defaultOrganization = organizationId, loggedUser.getId() ).map( Users::userMetadataToView );
+        return userStorage.updateUser( idOrEmail, u -> u.defaultOrganization = organizationId, loggedUser.getId() ).map( userStorage::view );
     }
 
     @WsMethod( method = GET, path = "/{organizationId}/users/{idOrEmail}/default-account/{accountId}", description = "Set default account in organization to user" )
@@ -382,7 +397,7 @@ public class OrganizationWS extends AbstractWS {
                                                     @WsParam( from = PATH ) String accountId,
                                                     @WsParam( from = SESSION ) UserData loggedUser ) {
         return userStorage.updateUser( idOrEmail, u -> u.defaultAccounts.put( organizationId, accountId ), loggedUser.getId() )
-            .map( Users::userMetadataToView );
+            .map( userStorage::view );
     }
 
     @WsMethod( method = GET, path = "/{organizationId}/add", description = "Add user to existing organization" )
@@ -393,7 +408,7 @@ public class OrganizationWS extends AbstractWS {
                                                      @WsParam( from = QUERY, name = { "id", "email", "idOrEmail" } ) String idOrEmail,
                                                      @WsParam( from = QUERY ) String role,
                                                      @WsParam( from = SESSION ) UserData loggedUser ) {
-        return userStorage.addOrganizationToUser( idOrEmail, userOrganizationId, role, loggedUser.getId() ).map( Users::userMetadataToView );
+        return userStorage.addOrganizationToUser( idOrEmail, userOrganizationId, role, loggedUser.getId() ).map( userStorage::view );
     }
 
     @WsMethod( method = GET, path = "/{organizationId}/remove", description = "Remove user from existing organization" )
@@ -403,7 +418,7 @@ public class OrganizationWS extends AbstractWS {
                                                           @WsParam( from = QUERY ) String userOrganizationId,
                                                           @WsParam( from = QUERY, name = { "id", "email", "idOrEmail" } ) String idOrEmail,
                                                           @WsParam( from = SESSION ) UserData loggedUser ) {
-        return userStorage.removeUserFromOrganization( idOrEmail, userOrganizationId, loggedUser.getId() ).map( Users::userMetadataToView );
+        return userStorage.removeUserFromOrganization( idOrEmail, userOrganizationId, loggedUser.getId() ).map( userStorage::view );
     }
 
     @WsMethod( method = POST, path = "/{organizationId}/assign" )
@@ -413,7 +428,7 @@ public class OrganizationWS extends AbstractWS {
                                           @WsParam( from = QUERY, name = { "id", "email", "idOrEmail" } ) String idOrEmail,
                                           @WsParam( from = QUERY ) String role,
                                           @WsParam( from = SESSION ) UserData loggedUser ) {
-        return userStorage.assignRole( idOrEmail, organizationId, role, loggedUser.getId() ).map( Users::userMetadataToView );
+        return userStorage.assignRole( idOrEmail, organizationId, role, loggedUser.getId() ).map( userStorage::view );
     }
 
     @WsMethod( method = GET, path = "/{organizationId}/roles", description = "List all available roles with permissions" )
@@ -456,7 +471,7 @@ public class OrganizationWS extends AbstractWS {
     public Response resetPassword( @WsParam( from = BODY ) ResetPasswordRequest request ) {
         String email = recoveryTokenService.getEmailByToken( request.token ).orElse( null );
         if( email != null ) {
-            Optional<UserView> userView = userStorage.passwd( email, request.newPassword, email ).map( Users::userMetadataToView );
+            Optional<UserView> userView = userStorage.passwd( email, request.newPassword, email ).map( userStorage::view );
             recoveryTokenService.invalidate( request.token );
         } else {
             log.info( "Invalid or expired token" );
@@ -500,6 +515,12 @@ public class OrganizationWS extends AbstractWS {
             .orElse( empty() );
     }
 
+    protected ValidationErrors validatePage( Optional<Integer> offset, Optional<Integer> limit ) {
+        if( offset.isPresent() && offset.get() < 0 ) return error( Http.StatusCode.BAD_REQUEST, "offset must not be negative" );
+        if( limit.isPresent() && limit.get() < 0 ) return error( Http.StatusCode.BAD_REQUEST, "limit must not be negative" );
+        return empty();
+    }
+
     protected ValidationErrors validateUserRegistered( @Nonnull User user ) {
         if( !selfRegistrationEnabled ) return error( Http.StatusCode.NOT_FOUND, "not available" );
         var existing = userStorage.get( user.email );
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) Xenoss
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+
+package oap.ws.account;
+
+import oap.ws.sso.SecurityRoles;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable, precompiled form of {@link SecurityRoles}: every role is mapped to a bitset over the known permissions,
+ * so that a permission check is a couple of hash lookups and a bitmask test.
+ */
+final class PermissionMatrix {
+    final SecurityRoles roles;
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final Map<String, long[]> permissions = new HashMap<>();
+
+    private PermissionMatrix( SecurityRoles roles ) {
+        this.roles = roles;
+
+        for( String role : roles.roles() ) {
+            for( String permission : roles.permissionsOf( role ) ) {
+                ordinals.putIfAbsent( permission, ordinals.size() );
+            }
+        }
+
+        int words = ( ordinals.size() + 63 ) >>> 6;
+        for( String role : roles.roles() ) {
+            long[] bits = new long[words];
+            for( String permission : roles.permissionsOf( role ) ) {
+                int ordinal = ordinals.get( permission );
+                bits[ordinal >>> 6] |= 1L << ordinal;
+            }
+            permissions.put( role, bits );
+        }
+    }
+
+    static PermissionMatrix compile( SecurityRoles roles ) {
+        return new PermissionMatrix( roles );
+    }
+
+    /**
+     * @return role -> permissions, a value key of the roles
+     */
+    static Map<String, Set<String>> contentOf( SecurityRoles roles ) {
+        Map<String, Set<String>> content = new HashMap<>();
+        for( String role : roles.roles() ) {
+            content.put( role, Set.copyOf( roles.permissionsOf( role ) ) );
+        }
+
+        return content;
+    }
+
+    /**
+     * @return true if the role is granted any of the permissions, same as {@link SecurityRoles#granted(String, String...)}
+     */
+    boolean granted( String role, String... permissions ) {
+        if( permissions.length == 0 ) {
+            return roles.granted( role, permissions );
+        }
+
+        long[] bits = this.permissions.get( role );
+        if( bits == null ) {
+            return false;
+        }
+
+        for( String permission : permissions ) {
+            Integer ordinal = ordinals.get( permission );
+            if( ordinal != null && ( bits[ordinal >>> 6] & ( 1L << ordinal ) ) != 0 ) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    Set<String> permissionsOf( String role ) {
+        return roles.permissionsOf( role );
+    }
+}
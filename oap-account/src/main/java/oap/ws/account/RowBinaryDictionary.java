@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) Xenoss
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+
+package oap.ws.account;
+
+import oap.logstream.formats.rowbinary.RowBinaryOutputStream;
+import oap.template.Types;
+import oap.util.Throwables;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * RowBinary encoder of string-only dictionaries.
+ * <p>
+ * The size of the output is computed upfront, rows are encoded straight into a single array of the exact size:
+ * no intermediate buffer growth, no per-value byte arrays and no final copy, so peak memory is the size of the export.
+ * Rows are split into segments that are sized and encoded in parallel, each segment into its own slice of the output.
+ * Lone surrogates are encoded as {@code ?}, as {@link String#getBytes(java.nio.charset.Charset)} does.
+ * <p>
+ * The export is not streamed: {@link oap.ws.Response} takes a complete body, and the array is kept as the cached
+ * snapshot of the dictionary anyway.
+ */
+final class RowBinaryDictionary<T> {
+    private static final int SEGMENT_SIZE = 16384;
+
+    private final List<String> headers;
+    private final List<Function<T, String>> columns;
+
+    RowBinaryDictionary( List<String> headers, List<Function<T, String>> columns ) {
+        this.headers = headers;
+        this.columns = columns;
+    }
+
+    byte[] encode( List<T> rows ) {
+        byte[] header = header();
+
+        int segments = ( rows.size() + SEGMENT_SIZE - 1 ) / SEGMENT_SIZE;
+        long[] offsets = new long[segments + 1];
+        offsets[0] = header.length;
+
+        IntStream.range( 0, segments )
+            .parallel()
+            .forEach( segment -> {
+                long size = 0;
+                for( T row : segment( rows, segment ) ) {
+                    for( Function<T, String> column : columns ) {
+                        int length = encodedLength( valueOf( column, row ) );
+                        size += varIntSize( length ) + length;
+                    }
+                }
+                offsets[segment + 1] = size;
+            } );
+        for( int segment = 0; segment < segments; segment++ ) {
+            offsets[segment + 1] += offsets[segment];
+        }
+
+        long size = offsets[segments];
+        if( size > Integer.MAX_VALUE - 8 ) {
+            throw new IllegalStateException( "dictionary is too big: " + size + " bytes" );
+        }
+
+        byte[] bytes = new byte[( int ) size];
+        System.arraycopy( header, 0, bytes, 0, header.length );
+
+        IntStream.range( 0, segments )
+            .parallel()
+            .forEach( segment -> {
+                int offset = ( int ) offsets[segment];
+                for( T row : segment( rows, segment ) ) {
+                    for( Function<T, String> column : columns ) {
+                        offset = write( valueOf( column, row ), bytes, offset );
+                    }
+                }
+            } );
+
+        return bytes;
+    }
+
+    private static <T> List<T> segment( List<T> rows, int segment ) {
+        return rows.subList( segment * SEGMENT_SIZE, Math.min( rows.size(), ( segment + 1 ) * SEGMENT_SIZE ) );
+    }
+
+    private byte[] header() {
+        try {
+            byte[][] types = new byte[headers.size()][];
+            for( int i = 0; i < types.length; i++ ) {
+                types[i] = new byte[] { Types.STRING.id };
+            }
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            new RowBinaryOutputStream( baos, headers, types );
+
+            return baos.toByteArray();
+        } catch( IOException e ) {
+            throw Throwables.propagate( e );
+        }
+    }
+
+    private static int write( String value, byte[] bytes, int offset ) {
+        int length = encodedLength( value );
+        while( ( length & ~0x7F ) != 0 ) {
+            bytes[offset++] = ( byte ) ( ( length & 0x7F ) | 0x80 );
+            length >>>= 7;
+        }
+        bytes[offset++] = ( byte ) length;
+
+        for( int i = 0; i < value.length(); i++ ) {
+            char c = value.charAt( i );
+            if( c < 0x80 ) {
+                bytes[offset++] = ( byte ) c;
+            } else if( c < 0x800 ) {
+                bytes[offset++] = ( byte ) ( 0xC0 | ( c >>> 6 ) );
+                bytes[offset++] = ( byte ) ( 0x80 | ( c & 0x3F ) );
+            } else if( !Character.isSurrogate( c ) ) {
+                bytes[offset++] = ( byte ) ( 0xE0 | ( c >>> 12 ) );
+                bytes[offset++] = ( byte ) ( 0x80 | ( ( c >>> 6 ) & 0x3F ) );
+                bytes[offset++] = ( byte ) ( 0x80 | ( c & 0x3F ) );
+            } else if( Character.isHighSurrogate( c ) && i + 1 < value.length() && Character.isLowSurrogate( value.charAt( i + 1 ) ) ) {
+                int codePoint = Character.toCodePoint( c, value.charAt( ++i ) );
+                bytes[offset++] = ( byte ) ( 0xF0 | ( codePoint >>> 18 ) );
+                bytes[offset++] = ( byte ) ( 0x80 | ( ( codePoint >>> 12 ) & 0x3F ) );
+                bytes[offset++] = ( byte ) ( 0x80 | ( ( codePoint >>> 6 ) & 0x3F ) );
+                bytes[offset++] = ( byte ) ( 0x80 | ( codePoint & 0x3F ) );
+            } else {
+                bytes[offset++] = '?';
+            }
+        }
+
+        return offset;
+    }
+
+    /**
+     * @return the number of bytes {@link #write(String, byte[], int)} encodes the value into, without the length prefix
+     */
+    private static int encodedLength( String value ) {
+        int length = 0;
+        for( int i = 0; i < value.length(); i++ ) {
+            char c = value.charAt( i );
+            if( c < 0x80 ) {
+                length += 1;
+            } else if( c < 0x800 ) {
+                length += 2;
+            } else if( !Character.isSurrogate( c ) ) {
+                length += 3;
+            } else if( Character.isHighSurrogate( c ) && i + 1 < value.length() && Character.isLowSurrogate( value.charAt( i + 1 ) ) ) {
+                length += 4;
+                i++;
+            } else {
+                length += 1;
+            }
+        }
+
+        return length;
+    }
+
+    private static <T> String valueOf( Function<T, String> column, T row ) {
+        String value = column.apply( row );
+
+        return value != null ? value : "";
+    }
+
+    private static int varIntSize( int value ) {
+        int size = 1;
+        while( ( value & ~0x7F ) != 0 ) {
+            value >>>= 7;
+            size++;
+        }
+
+        return size;
+    }
+}
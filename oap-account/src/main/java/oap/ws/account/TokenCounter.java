@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) Xenoss
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+
+package oap.ws.account;
+
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * Token generation counter of a user, see {@link TokenCounterStorage}.
+ */
+@ToString
+@EqualsAndHashCode
+public class TokenCounter implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 4150361212840315719L;
+
+    /**
+     * user id
+     */
+    public String id;
+    public long counter;
+
+    public TokenCounter() {
+    }
+
+    public TokenCounter( String id, long counter ) {
+        this.id = id;
+        this.counter = counter;
+    }
+
+    public TokenCounter increment() {
+        counter++;
+
+        return this;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) Xenoss
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+
+package oap.ws.account;
+
+import lombok.extern.slf4j.Slf4j;
+import oap.id.Identifier;
+import oap.storage.MemoryStorage;
+import oap.storage.Storage;
+
+import java.io.Serial;
+import java.util.List;
+
+import static oap.storage.Storage.Lock.CONCURRENT;
+
+/**
+ * Per-user token generation counters, kept apart from the {@link UserStorage} documents.
+ * <p>
+ * Issuing or revoking tokens only touches a small per-user record under a per-id lock, so it neither
+ * serializes on the user storage nor rewrites the user document. Persistence and replication between nodes
+ * are provided by a dedicated persistence, see oap-module.oap.
+ * <p>
+ * Users without a record yet fall back to the counter stored in the user document,
+ * so that the tokens issued before the counters were moved out stay valid.
+ * The counter is dropped together with the user, a user re-created with the same id must not accept the old tokens.
+ * The stored {@link UserData} is never touched: tokens are generated for a {@link #tokenSubject(UserData)} carrying the counter.
+ */
+@Slf4j
+public class TokenCounterStorage extends MemoryStorage<String, TokenCounter> {
+    public TokenCounterStorage( int transactionLogSize, UserStorage userStorage ) {
+        super( Identifier.<TokenCounter>forId( c -> c.id, ( c, id ) -> c.id = id ).build(), CONCURRENT, transactionLogSize );
+
+        userStorage.addDataListener( new Storage.DataListener<>() {
+            @Override
+            public void deleted( List<IdObject<String, UserData>> objects ) {
+                for( IdObject<String, UserData> object : objects ) {
+                    delete( object.id );
+                }
+            }
+        } );
+    }
+
+    public long counterOf( UserData userData ) {
+        return get( userData.getId() )
+            .map( c -> c.counter )
+            .orElse( userData.user.counter );
+    }
+
+    public long incrementAndGet( UserData userData ) {
+        TokenCounter tokenCounter = update( userData.getId(), TokenCounter::increment,
+            () -> new TokenCounter( userData.getId(), userData.user.counter + 1 ), MODIFIED_BY_SYSTEM );
+        log.trace( "token counter {}", tokenCounter );
+
+        return tokenCounter.counter;
+    }
+
+    /**
+     * @return the user as seen by the token generator, with the current counter
+     */
+    public UserData tokenSubject( UserData userData ) {
+        return new TokenSubject( userData, counterOf( userData ) );
+    }
+
+    /**
+     * Shallow copy of a {@link UserData} reporting the counter from this storage instead of the user document.
+     */
+    private static final class TokenSubject extends UserData {
+        @Serial
+        private static final long serialVersionUID = -6391204815523157230L;
+
+        private final long counter;
+
+        private TokenSubject( UserData userData, long counter ) {
+            super( userData.user, userData.roles );
+            this.accounts = userData.accounts;
+            this.lastLogin = userData.lastLogin;
+            this.lastAccess = userData.lastAccess;
+            this.banned = userData.banned;
+            this.counter = counter;
+        }
+
+        @Override
+        public long getCounter() {
+            return counter;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) Xenoss
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+
+package oap.ws.account;
+
+import lombok.extern.slf4j.Slf4j;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.joda.time.DateTimeZone.UTC;
+
+/**
+ * Write-behind tracker of {@link UserData#lastAccess}.
+ * <p>
+ * Authenticated requests only record the access time in memory, the latest time per user is written to
+ * the {@link UserStorage} on {@link #run()} (scheduled by the kernel) and on {@link #preStop()}.
+ */
+@Slf4j
+public class UserAccessTracker implements Runnable {
+    private final UserStorage userStorage;
+    private final long granularity;
+    private final ConcurrentHashMap<String, Long> pending = new ConcurrentHashMap<>();
+
+    /**
+     * @param granularity minimal difference (ms) between the stored and the actual access time worth a storage write
+     */
+    public UserAccessTracker( UserStorage userStorage, long granularity ) {
+        this.userStorage = userStorage;
+        this.granularity = granularity;
+    }
+
+    public void touch( UserData userData ) {
+        long now = DateTimeUtils.currentTimeMillis();
+
+        if( userData.lastAccess != null && now - userData.lastAccess.getMillis() < granularity ) {
+            return;
+        }
+
+        pending.merge( userData.getId(), now, Math::max );
+    }
+
+    @Override
+    public void run() {
+        int count = 0;
+
+        for( String id : pending.keySet() ) {
+            Long lastAccess = pending.remove( id );
+            if( lastAccess == null ) {
+                continue;
+            }
+
+            userStorage.update( id, ud -> {
+                if( ud.lastAccess == null || ud.lastAccess.getMillis() < lastAccess ) {
+                    ud.lastAccess = new DateTime( lastAccess, UTC );
+                }
+
+                return ud;
+            }, id );
+            count++;
+        }
+
+        log.trace( "flushed last access of {} user(s)", count );
+    }
+
+    public void preStop() {
+        run();
+    }
+}
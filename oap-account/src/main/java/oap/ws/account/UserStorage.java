@@ -10,7 +10,9 @@ import lombok.extern.slf4j.Slf4j;
 import oap.id.Identifier;
 import oap.storage.MemoryStorage;
 import oap.storage.Metadata;
+import oap.storage.Storage;
 import org.apache.commons.lang3.StringUtils;
+import org.joda.time.DateTime;
 import org.jspecify.annotations.NonNull;
 import org.jspecify.annotations.Nullable;
 
@@ -19,14 +21,21 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
 import static oap.storage.Storage.Lock.SERIALIZED;
+import static org.joda.time.DateTimeZone.UTC;
 
 @Slf4j
 public class UserStorage extends MemoryStorage<String, UserData> implements UserService {
+    private static final String RESERVATION_PREFIX = "\u0000";
+
     public final String defaultSystemAdminEmail;
     public final String defaultSystemAdminPassword;
     public final String defaultSystemAdminFirstName;
@@ -34,6 +43,30 @@ public class UserStorage extends MemoryStorage<String, UserData> implements User
     public final Map<String, String> defaultSystemAdminRoles;
     public final boolean defaultSystemAdminReadOnly;
 
+    /**
+     * lowercase email -> user id
+     */
+    private final ConcurrentHashMap<String, String> emailIndex = new ConcurrentHashMap<>();
+    /**
+     * access key -> ids of users having it, access keys are derived from emails and may collide
+     */
+    private final ConcurrentHashMap<String, Set<String>> accessKeyIndex = new ConcurrentHashMap<>();
+    /**
+     * organization id -> ids of users having a role in it
+     */
+    private final ConcurrentHashMap<String, Set<String>> organizationIndex = new ConcurrentHashMap<>();
+    /**
+     * user id -> last indexed keys, used to drop stale index entries on change
+     */
+    private final ConcurrentHashMap<String, IndexedKeys> indexed = new ConcurrentHashMap<>();
+    /**
+     * set once the indexes are built over the loaded storage, data listeners keep them current afterwards
+     */
+    private final AtomicBoolean indexesBuilt = new AtomicBoolean();
+    private final AtomicLong reservations = new AtomicLong();
+    private final ViewCache<UserData, UserView> views = new ViewCache<>( UserData::getId, Users::userMetadataToView );
+    private final ViewCache<UserData, UserSecureView> secureViews = new ViewCache<>( UserData::getId, Users::userMetadataToSecureView );
+
     /**
      * @param defaultSystemAdminEmail     default user email
      * @param defaultSystemAdminPassword  default user password
@@ -60,9 +93,16 @@ public class UserStorage extends MemoryStorage<String, UserData> implements User
         this.defaultSystemAdminLastName = defaultSystemAdminLastName;
         this.defaultSystemAdminRoles = defaultSystemAdminRoles;
         this.defaultSystemAdminReadOnly = defaultSystemAdminReadOnly;
+
+        addDataListener( new IndexDataListener() );
+        addDataListener( views );
+        addDataListener( secureViews );
     }
 
     public void start() {
+        reindex();
+        indexesBuilt.set( true );
+
         log.info( "default email {} firstName {} lastName {} roles {} ro {}",
             defaultSystemAdminEmail, defaultSystemAdminFirstName, defaultSystemAdminLastName, defaultSystemAdminRoles, defaultSystemAdminReadOnly );
 
@@ -105,9 +145,20 @@ public class UserStorage extends MemoryStorage<String, UserData> implements User
     }
 
     public List<Metadata<UserData>> getUsers( String organizationId ) {
-        return selectMetadata()
-            .filter( u -> u.object.belongsToOrganization( organizationId ) )
-            .toList();
+        Set<String> ids = organizationIndex.get( organizationId );
+        if( ids == null ) {
+            return List.of();
+        }
+
+        ArrayList<Metadata<UserData>> users = new ArrayList<>( ids.size() );
+        for( String id : ids ) {
+            Metadata<UserData> userMetadata = super.getMetadataNullable( id );
+            if( userMetadata != null && userMetadata.object.belongsToOrganization( organizationId ) ) {
+                users.add( userMetadata );
+            }
+        }
+
+        return users;
     }
 
     public Metadata<UserData> createUser( User user, Map<String, String> roles, String changedBy ) {
@@ -126,6 +177,46 @@ public class UserStorage extends MemoryStorage<String, UserData> implements User
         return getMetadata( user.id ).orElseThrow();
     }
 
+    /**
+     * Records a login of the user. {@link UserData#lastLogin} is kept with a day precision,
+     * so the user document is only updated on the first login of a day.
+     *
+     * @param id user id, not an email
+     * @return the user after the update
+     */
+    public Optional<Metadata<UserData>> login( @Nonnull String id, String changedBy ) {
+        Metadata<UserData> metadata = super.getMetadataNullable( id );
+        if( metadata == null ) {
+            return Optional.empty();
+        }
+
+        DateTime now = DateTime.now( UTC );
+        DateTime lastLogin = metadata.object.lastLogin;
+        if( lastLogin != null && lastLogin.withZone( UTC ).toLocalDate().equals( now.toLocalDate() ) ) {
+            return Optional.of( metadata );
+        }
+
+        return super.update( id, u -> {
+            u.lastLogin = now;
+
+            return u;
+        }, changedBy ).map( u -> super.getMetadataNullable( id ) );
+    }
+
+    /**
+     * @return the view of the user, cached until the user changes
+     */
+    public UserView view( Metadata<UserData> metadata ) {
+        return views.get( metadata );
+    }
+
+    /**
+     * @return the secure view of the user, cached until the user changes
+     */
+    public UserSecureView secureView( Metadata<UserData> metadata ) {
+        return secureViews.get( metadata );
+    }
+
     public Optional<Metadata<UserData>> updateUser( String idOrEmail, Consumer<User> update, String changedBy ) {
         log.debug( "updateUser id/email {}", idOrEmail );
 
@@ -210,37 +301,201 @@ public class UserStorage extends MemoryStorage<String, UserData> implements User
             return metadataNullable;
         }
 
+        String id = lookup( emailIndex, StringUtils.toRootLowerCase( idOrEmail ) );
+
+        if( id == null ) {
+            return null;
+        }
+
+        Metadata<UserData> userMetadata = super.getMetadataNullable( id );
+        if( userMetadata != null && userMetadata.object.getEmail().equalsIgnoreCase( idOrEmail ) ) {
+            return userMetadata;
+        }
+
+        reindex( id );
+
+        return null;
+    }
+
+    /**
+     * @return the user having the access key whose api key matches
+     */
+    public Optional<UserData> getByApiKey( @Nonnull String accessKey, @Nonnull String apiKey ) {
+        Set<String> ids = accessKeyIndex.get( accessKey );
+        if( ids == null && ensureIndexed() ) {
+            ids = accessKeyIndex.get( accessKey );
+        }
+        if( ids == null ) {
+            return Optional.empty();
+        }
+
+        for( String id : List.copyOf( ids ) ) {
+            Metadata<UserData> userMetadata = super.getMetadataNullable( id );
+            if( userMetadata == null || !userMetadata.object.getAccessKey().equals( accessKey ) ) {
+                reindex( id );
+                continue;
+            }
+
+            if( userMetadata.object.authenticate( accessKey, apiKey ) ) {
+                return Optional.of( userMetadata.object );
+            }
+        }
+
+        return Optional.empty();
+    }
+
+    private @Nullable String lookup( ConcurrentHashMap<String, String> index, String key ) {
+        String id = index.get( key );
+
+        if( id == null && ensureIndexed() ) {
+            id = index.get( key );
+        }
+
+        return id == null || isReservation( id ) ? null : id;
+    }
+
+    /**
+     * Builds the indexes once if the storage is used before {@link #start()}.
+     */
+    private boolean ensureIndexed() {
+        if( indexesBuilt.get() || !indexesBuilt.compareAndSet( false, true ) ) {
+            return false;
+        }
+
+        log.debug( "building indexes of {} users", size() );
+        reindex();
+
+        return true;
+    }
+
+    /**
+     * Rebuilds secondary indexes from scratch. Objects loaded by a persistence bypass data listeners,
+     * so this runs once on start, after the persistence has loaded the storage.
+     */
+    public void reindex() {
         for( Metadata<UserData> userMetadata : listMetadata() ) {
-            if( userMetadata.object.getEmail().equalsIgnoreCase( idOrEmail ) ) {
-                return userMetadata;
+            reindex( userMetadata.object.getId() );
+        }
+
+        for( String id : indexed.keySet() ) {
+            if( super.getMetadataNullable( id ) == null ) {
+                unindex( id );
             }
         }
+    }
 
-        return null;
+    private void reindex( String id ) {
+        if( id == null ) {
+            return;
+        }
+
+        indexed.compute( id, ( k, old ) -> {
+            Metadata<UserData> userMetadata = super.getMetadataNullable( id );
+
+            return updateIndexes( id, old, userMetadata != null ? new IndexedKeys( userMetadata.object ) : null );
+        } );
+    }
+
+    private void unindex( String id ) {
+        indexed.computeIfPresent( id, ( k, old ) -> updateIndexes( id, old, null ) );
+    }
+
+    private IndexedKeys updateIndexes( String id, @Nullable IndexedKeys old, @Nullable IndexedKeys keys ) {
+        if( old != null ) {
+            if( old.email != null && ( keys == null || !old.email.equals( keys.email ) ) ) {
+                emailIndex.remove( old.email, id );
+            }
+            if( old.accessKey != null && ( keys == null || !old.accessKey.equals( keys.accessKey ) ) ) {
+                removeFrom( accessKeyIndex, old.accessKey, id );
+            }
+            for( String organizationId : old.organizations ) {
+                if( keys == null || !keys.organizations.contains( organizationId ) ) {
+                    removeFrom( organizationIndex, organizationId, id );
+                }
+            }
+        }
+
+        if( keys != null ) {
+            if( keys.email != null ) {
+                indexEmail( keys.email, id );
+            }
+            if( keys.accessKey != null ) {
+                addTo( accessKeyIndex, keys.accessKey, id );
+            }
+            for( String organizationId : keys.organizations ) {
+                addTo( organizationIndex, organizationId, id );
+            }
+        }
+
+        return keys;
+    }
+
+    /**
+     * Replaces a reservation or a stale entry, but never the entry of another user having the email.
+     */
+    private void indexEmail( String email, String id ) {
+        while( true ) {
+            String owner = emailIndex.putIfAbsent( email, id );
+            if( owner == null || owner.equals( id ) ) {
+                return;
+            }
+
+            if( !isReservation( owner ) ) {
+                Metadata<UserData> existing = super.getMetadataNullable( owner );
+                if( existing != null && existing.object.getEmail().equalsIgnoreCase( email ) ) {
+                    log.warn( "email {} of user {} is already taken by user {}", email, id, owner );
+                    return;
+                }
+            }
+
+            if( emailIndex.replace( email, owner, id ) ) {
+                return;
+            }
+        }
+    }
+
+    private static void addTo( ConcurrentHashMap<String, Set<String>> index, String key, String id ) {
+        index.compute( key, ( k, ids ) -> {
+            Set<String> keyIds = ids != null ? ids : ConcurrentHashMap.newKeySet();
+            keyIds.add( id );
+
+            return keyIds;
+        } );
+    }
+
+    private static void removeFrom( ConcurrentHashMap<String, Set<String>> index, String key, String id ) {
+        index.computeIfPresent( key, ( k, ids ) -> {
+            ids.remove( id );
+
+            return ids.isEmpty() ? null : ids;
+        } );
     }
 
     public Optional<UserData> get( @Nonnull String idOrEmail ) {
         return getMetadata( idOrEmail ).map( metadata -> metadata.object );
     }
 
-    public Optional<UserData> update( @Nonnull String idOrEmail, @Nonnull Function<UserData, UserData> update, String modifiedBy ) {
+    /**
+     * @throws EmailDuplicateException if the update changes the email to the one of another user
+     */
+    public Optional<UserData> update( @Nonnull String idOrEmail, @Nonnull Function<UserData, UserData> update, String modifiedBy ) throws EmailDuplicateException {
         Metadata<UserData> metadataNullable = getMetadataNullable( idOrEmail );
 
         if( metadataNullable == null ) {
-            return super.update( idOrEmail, update, modifiedBy );
+            return super.update( idOrEmail, claimingEmail( update ), modifiedBy );
         }
 
-        return super.update( metadataNullable.object.getId(), update, modifiedBy );
+        return super.update( metadataNullable.object.getId(), claimingEmail( update ), modifiedBy );
     }
 
     public UserData update( String idOrEmail, @Nonnull Function<UserData, UserData> update, @Nonnull Supplier<UserData> init, String modifiedBy ) {
         Metadata<UserData> metadataNullable = getMetadataNullable( idOrEmail );
 
         if( metadataNullable == null ) {
-            return super.update( idOrEmail, update, init, modifiedBy );
+            return super.update( idOrEmail, claimingEmail( update ), init, modifiedBy );
         }
 
-        return super.update( metadataNullable.object.getId(), update, init, modifiedBy );
+        return super.update( metadataNullable.object.getId(), claimingEmail( update ), init, modifiedBy );
     }
 
     public Optional<Metadata<UserData>> deleteMetadata( @Nonnull String idOrEmail ) {
@@ -259,16 +514,118 @@ public class UserStorage extends MemoryStorage<String, UserData> implements User
 
     @Override
     public UserData store( @Nonnull UserData userData, String modifiedBy ) throws EmailDuplicateException {
-        if( userData.getId() == null ) {
-            UserData existUserData = select()
-                .filter( ud -> ud.getEmail().equalsIgnoreCase( userData.getEmail() ) )
-                .findAny()
-                .orElse( null );
-            if( existUserData != null ) {
-                throw new EmailDuplicateException( existUserData.getId(), userData.getEmail() );
+        if( userData.getId() != null ) {
+            return super.store( userData, modifiedBy );
+        }
+
+        userData.user.initKeys();
+
+        String email = StringUtils.toRootLowerCase( userData.getEmail() );
+        String reservation = reserveEmail( email, userData.getEmail() );
+
+        try {
+            UserData stored = super.store( userData, modifiedBy );
+            reindex( stored.getId() );
+
+            return stored;
+        } finally {
+            emailIndex.remove( email, reservation );
+        }
+    }
+
+    /**
+     * Atomically claims the email in the index before the user gets an id,
+     * so that concurrent registrations of the same email cannot both succeed.
+     */
+    private String reserveEmail( String email, String originalEmail ) throws EmailDuplicateException {
+        String reservation = RESERVATION_PREFIX + reservations.incrementAndGet();
+        claimEmail( email, originalEmail, reservation );
+
+        return reservation;
+    }
+
+    /**
+     * Claims the new email of a user in the index before the change is stored, the email of another user is rejected.
+     * The original email is restored on rejection.
+     */
+    private Function<UserData, UserData> claimingEmail( Function<UserData, UserData> update ) {
+        return u -> {
+            String email = u.getEmail();
+            UserData updated = update.apply( u );
+
+            if( updated.getId() != null && updated.getEmail() != null && !updated.getEmail().equalsIgnoreCase( email ) ) {
+                try {
+                    claimEmail( StringUtils.toRootLowerCase( updated.getEmail() ), updated.getEmail(), updated.getId() );
+                } catch( EmailDuplicateException e ) {
+                    updated.user.email = email;
+                    throw e;
+                }
+            }
+
+            return updated;
+        };
+    }
+
+    private void claimEmail( String email, String originalEmail, String claimant ) throws EmailDuplicateException {
+        ensureIndexed();
+
+        while( true ) {
+            String existingId = emailIndex.putIfAbsent( email, claimant );
+            if( existingId == null || existingId.equals( claimant ) ) {
+                return;
+            }
+
+            if( isReservation( existingId ) ) {
+                throw new EmailDuplicateException( null, originalEmail );
+            }
+
+            Metadata<UserData> existing = super.getMetadataNullable( existingId );
+            if( existing != null && existing.object.getEmail().equalsIgnoreCase( email ) ) {
+                throw new EmailDuplicateException( existingId, originalEmail );
+            }
+
+            log.trace( "stale email index entry {} -> {}", email, existingId );
+            emailIndex.remove( email, existingId );
+            reindex( existingId );
+        }
+    }
+
+    private static boolean isReservation( String id ) {
+        return id.startsWith( RESERVATION_PREFIX );
+    }
+
+    private class IndexDataListener implements Storage.DataListener<String, UserData> {
+        @Override
+        public void added( List<IdObject<String, UserData>> objects ) {
+            for( IdObject<String, UserData> object : objects ) {
+                reindex( object.id );
             }
         }
 
-        return super.store( userData, modifiedBy );
+        @Override
+        public void updated( List<IdObject<String, UserData>> objects ) {
+            for( IdObject<String, UserData> object : objects ) {
+                reindex( object.id );
+            }
+        }
+
+        @Override
+        public void deleted( List<IdObject<String, UserData>> objects ) {
+            for( IdObject<String, UserData> object : objects ) {
+                unindex( object.id );
+            }
+        }
+    }
+
+    private static final class IndexedKeys {
+        private final String email;
+        private final String accessKey;
+        private final Set<String> organizations;
+
+        private IndexedKeys( UserData userData ) {
+            this.email = StringUtils.toRootLowerCase( userData.getEmail() );
+            this.accessKey = userData.getEmail() != null ? userData.getAccessKey() : null;
+            this.organizations = userData.roles != null ? Set.copyOf( userData.roles.keySet() ) : Set.of();
+        }
     }
 }
@@ -44,8 +44,8 @@ public class UserWS extends AbstractWS {
         return userStorage.getMetadata( idOrEmail )
             .map( u ->
                 ( idOrEmail.equalsIgnoreCase( loggedUser.user.id ) || idOrEmail.equalsIgnoreCase( loggedUser.user.email ) ) || isSystem( loggedUser )
-                    ? Users.userMetadataToSecureView( u )
-                    : Users.userMetadataToView( u ) );
+                    ? userStorage.secureView( u )
+                    : userStorage.view( u ) );
     }
 
     protected ValidationErrors validateSameOrganization( String organizationId, String idOrEmail ) {
@@ -61,6 +61,6 @@ public class UserWS extends AbstractWS {
     public Optional<UserSecureView> current( @WsParam( from = SESSION ) Optional<UserData> loggedUser ) {
         return loggedUser
             .flatMap( u -> userStorage.getMetadata( u.user.id ) )
-            .map( Users::userMetadataToSecureView );
+            .map( userStorage::secureView );
     }
 }
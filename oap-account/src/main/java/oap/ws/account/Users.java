@@ -3,6 +3,12 @@ package oap.ws.account;
 import oap.storage.Metadata;
 import org.joda.time.DateTime;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import static org.joda.time.DateTimeZone.UTC;
 
 public final class Users {
@@ -12,7 +18,7 @@ public final class Users {
     public static UserView userMetadataToView( Metadata<UserData> userDataMetadata ) {
         UserData userData = userDataMetadata.object;
         User user = userData.user;
-        return new UserView( user.id, user.email, user.firstName, user.lastName, userData.accounts,
+        return new UserView( user.id, user.email, user.firstName, user.lastName, accounts( userData.accounts ),
             userData.roles, userData.banned, user.confirmed, user.tfaEnabled, user.defaultAccounts,
             user.defaultOrganization, userData.lastLogin,
             new DateTime( userDataMetadata.created, UTC ), new DateTime( userDataMetadata.modified, UTC ) );
@@ -21,10 +27,20 @@ public final class Users {
     public static UserSecureView userMetadataToSecureView( Metadata<UserData> userDataMetadata ) {
         UserData userData = userDataMetadata.object;
         User user = userData.user;
-        return new UserSecureView( user.id, user.email, user.firstName, user.lastName, userData.accounts,
+        return new UserSecureView( user.id, user.email, user.firstName, user.lastName, accounts( userData.accounts ),
             userData.roles, userData.banned, user.confirmed, user.tfaEnabled, user.defaultAccounts,
             user.defaultOrganization, userData.lastLogin,
             new DateTime( userDataMetadata.created, UTC ), new DateTime( userDataMetadata.modified, UTC ),
             user.apiKey, user.getAccessKey(), user.secretKey );
     }
+
+    /**
+     * The views keep the list form of the published API, account order is preserved.
+     */
+    private static Map<String, List<String>> accounts( Map<String, Set<String>> accounts ) {
+        Map<String, List<String>> result = new LinkedHashMap<>();
+        accounts.forEach( ( organizationId, accountIds ) -> result.put( organizationId, new ArrayList<>( accountIds ) ) );
+
+        return result;
+    }
 }
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) Xenoss
+ * Unauthorized copying of this file, via any medium is strictly prohibited
+ * Proprietary and confidential
+ */
+
+package oap.ws.account;
+
+import oap.storage.Metadata;
+import oap.storage.Storage;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Views of storage objects, built once per change of an object.
+ * <p>
+ * A view is served while the {@link Metadata#modified} stamp of the object stays the same. It is dropped on every change
+ * reported by the storage, including the changes replicated from the other nodes. A view built concurrently
+ * with a change is returned but not cached.
+ * <p>
+ * Do not pass metadata of deleted objects to {@link #get(Metadata)}, the view would stay in the cache.
+ */
+final class ViewCache<D, V> implements Storage.DataListener<String, D> {
+    private final ConcurrentHashMap<String, CachedView<V>> views = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final Function<D, String> identifier;
+    private final Function<Metadata<D>, V> toView;
+
+    ViewCache( Function<D, String> identifier, Function<Metadata<D>, V> toView ) {
+        this.identifier = identifier;
+        this.toView = toView;
+    }
+
+    V get( Metadata<D> metadata ) {
+        String id = identifier.apply( metadata.object );
+        long modified = metadata.modified;
+
+        CachedView<V> cached = views.get( id );
+        if( cached != null && cached.modified == modified ) {
+            return cached.view;
+        }
+
+        long generation = this.generation.get();
+        V view = toView.apply( metadata );
+        views.compute( id, ( k, old ) -> this.generation.get() == generation ? new CachedView<>( modified, view ) : old );
+
+        return view;
+    }
+
+    void invalidate( String id ) {
+        generation.incrementAndGet();
+        views.remove( id );
+    }
+
+    int size() {
+        return views.size();
+    }
+
+    @Override
+    public void added( List<IdObject<String, D>> objects ) {
+        for( IdObject<String, D> object : objects ) {
+            invalidate( object.id );
+        }
+    }
+
+    @Override
+    public void updated( List<IdObject<String, D>> objects ) {
+        for( IdObject<String, D> object : objects ) {
+            invalidate( object.id );
+        }
+    }
+
+    @Override
+    public void deleted( List<IdObject<String, D>> objects ) {
+        for( IdObject<String, D> object : objects ) {
+            invalidate( object.id );
+        }
+    }
+
+    private static final class CachedView<V> {
+        private final long modified;
+        private final V view;
+
+        private CachedView( long modified, V view ) {
+            this.modified = modified;
+            this.view = view;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package oap.ws.account;
+
+import oap.ws.sso.SecurityRoles;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PermissionMatrixTest {
+    private static final SecurityRoles SERVER_ROLES = roles( Map.of(
+        "ADMIN", Set.of( "account:read", "account:store", "user:read" ),
+        "USER", Set.of( "account:read" ) ) );
+    private static final SecurityRoles CLIENT_ROLES = roles( Map.of(
+        "USER", Set.of( "campaign:read" ),
+        "MANAGER", Set.of( "campaign:read", "campaign:manage" ) ) );
+    private static final List<String> PERMISSIONS = List.of(
+        "account:read", "account:store", "user:read", "campaign:read", "campaign:manage", "unknown:permission" );
+
+    @Test
+    public void testServerRoles() {
+        assertEquivalent( SERVER_ROLES.merge( roles( Map.of() ) ) );
+    }
+
+    @Test
+    public void testClientRoles() {
+        assertEquivalent( SERVER_ROLES.merge( CLIENT_ROLES ) );
+    }
+
+    @Test
+    public void testUnknown() {
+        SecurityRoles merged = SERVER_ROLES.merge( CLIENT_ROLES );
+        PermissionMatrix matrix = PermissionMatrix.compile( merged );
+
+        assertThat( matrix.granted( "USER", "unknown:permission" ) ).isFalse();
+        assertThat( matrix.granted( "UNKNOWN", "account:read" ) ).isEqualTo( merged.granted( "UNKNOWN", "account:read" ) ).isFalse();
+        assertThat( matrix.granted( "UNKNOWN" ) ).isEqualTo( merged.granted( "UNKNOWN" ) );
+        assertThat( matrix.permissionsOf( "UNKNOWN" ) ).isEqualTo( merged.permissionsOf( "UNKNOWN" ) );
+    }
+
+    @Test
+    public void testCachedByRoles() {
+        DefaultUserProvider userProvider = new DefaultUserProvider( null, null, null, null, SERVER_ROLES, true, null, null, null );
+
+        PermissionMatrix matrix = userProvider.permissionMatrix( CLIENT_ROLES );
+        assertThat( userProvider.permissionMatrix( CLIENT_ROLES ) ).isSameAs( matrix );
+        assertThat( userProvider.permissionMatrix( roles( Map.of(
+            "MANAGER", Set.of( "campaign:manage", "campaign:read" ),
+            "USER", Set.of( "campaign:read" ) ) ) ) ).isSameAs( matrix );
+        assertThat( userProvider.permissionMatrix( roles( Map.of( "USER", Set.of( "campaign:read" ) ) ) ) ).isNotSameAs( matrix );
+    }
+
+    private static void assertEquivalent( SecurityRoles merged ) {
+        PermissionMatrix matrix = PermissionMatrix.compile( merged );
+
+        for( String role : List.of( "ADMIN", "USER", "MANAGER", "UNKNOWN" ) ) {
+            assertThat( matrix.permissionsOf( role ) ).as( role ).isEqualTo( merged.permissionsOf( role ) );
+            assertThat( matrix.granted( role ) ).as( role ).isEqualTo( merged.granted( role ) );
+
+            for( String permission : PERMISSIONS ) {
+                assertThat( matrix.granted( role, permission ) ).as( role + " " + permission ).isEqualTo( merged.granted( role, permission ) );
+            }
+            assertThat( matrix.granted( role, "unknown:permission", "account:read" ) ).as( role )
+                .isEqualTo( merged.granted( role, "unknown:permission", "account:read" ) );
+        }
+    }
+
+    private static SecurityRoles roles( Map<String, Set<String>> roles ) {
+        return new SecurityRoles( new SecurityRoles.Config( roles ) );
+    }
+}
@@ -0,0 +1,39 @@
+package oap.ws.account;
+
+import oap.logstream.formats.rowbinary.RowBinaryInputStream;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RowBinaryDictionaryTest {
+    @Test
+    public void testEncode() throws IOException {
+        RowBinaryDictionary<String[]> dictionary = new RowBinaryDictionary<>(
+            List.of( "id", "name" ),
+            List.of( r -> r[0], r -> r[1] ) );
+
+        byte[] bytes = dictionary.encode( List.of(
+            new String[] { "1", "ascii" },
+            new String[] { "2", "юникод" },
+            new String[] { "3", null },
+            new String[] { "4", "lone \uD800 surrogate" },
+            new String[] { "5", "pair \uD83D\uDE00 \uDC00" } ) );
+
+        RowBinaryInputStream rowBinaryInputStream = new RowBinaryInputStream( new ByteArrayInputStream( bytes ) );
+        assertThat( rowBinaryInputStream.headers ).isEqualTo( new String[] { "id", "name" } );
+        assertThat( rowBinaryInputStream.readString() ).isEqualTo( "1" );
+        assertThat( rowBinaryInputStream.readString() ).isEqualTo( "ascii" );
+        assertThat( rowBinaryInputStream.readString() ).isEqualTo( "2" );
+        assertThat( rowBinaryInputStream.readString() ).isEqualTo( "юникод" );
+        assertThat( rowBinaryInputStream.readString() ).isEqualTo( "3" );
+        assertThat( rowBinaryInputStream.readString() ).isEqualTo( "" );
+        assertThat( rowBinaryInputStream.readString() ).isEqualTo( "4" );
+        assertThat( rowBinaryInputStream.readString() ).isEqualTo( "lone ? surrogate" );
+        assertThat( rowBinaryInputStream.readString() ).isEqualTo( "5" );
+        assertThat( rowBinaryInputStream.readString() ).isEqualTo( "pair \uD83D\uDE00 ?" );
+    }
+}
@@ -3,9 +3,11 @@ package oap.ws.account;
 import oap.storage.Storage;
 import org.testng.annotations.Test;
 
+import java.util.HashMap;
 import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class UserStorageTest {
     @Test
@@ -18,4 +20,118 @@ public class UserStorageTest {
                 new UserService.UserInfo( "TSTML", "test@email", "fn", "ln" ),
                 new UserService.UserInfo( "unknown", "unknown", null, null ) );
     }
+
+    @Test
+    public void testGetByEmail() {
+        UserStorage userStorage = new UserStorage( 100, "1", "2", "3", "4", Map.of(), true );
+        userStorage.store( new UserData( new User( null, "test@email", "fn", "ln" ) ), Storage.MODIFIED_BY_SYSTEM );
+
+        assertThat( userStorage.get( "TEST@email" ) ).map( UserData::getId ).contains( "TSTML" );
+
+        userStorage.updateUser( "test@email", u -> u.email = "new@email", Storage.MODIFIED_BY_SYSTEM );
+
+        assertThat( userStorage.get( "test@email" ) ).isEmpty();
+        assertThat( userStorage.get( "New@Email" ) ).map( UserData::getId ).contains( "TSTML" );
+
+        userStorage.delete( "new@email" );
+
+        assertThat( userStorage.get( "new@email" ) ).isEmpty();
+    }
+
+    @Test
+    public void testGetUsers() {
+        UserStorage userStorage = new UserStorage( 100, "1", "2", "3", "4", Map.of(), true );
+        userStorage.store( new UserData( new User( null, "u1@email", "fn", "ln" ), new HashMap<>( Map.of( "ORG1", "USER" ) ) ), Storage.MODIFIED_BY_SYSTEM );
+        userStorage.store( new UserData( new User( null, "u2@email", "fn", "ln" ), new HashMap<>( Map.of( "ORG2", "USER" ) ) ), Storage.MODIFIED_BY_SYSTEM );
+
+        assertThat( userStorage.getUsers( "ORG1" ) ).extracting( m -> m.object.getEmail() ).containsExactly( "u1@email" );
+
+        userStorage.addOrganizationToUser( "u2@email", "ORG1", "ADMIN", Storage.MODIFIED_BY_SYSTEM );
+        userStorage.removeUserFromOrganization( "u1@email", "ORG1", Storage.MODIFIED_BY_SYSTEM );
+
+        assertThat( userStorage.getUsers( "ORG1" ) ).extracting( m -> m.object.getEmail() ).containsExactly( "u2@email" );
+
+        userStorage.delete( "u2@email" );
+
+        assertThat( userStorage.getUsers( "ORG1" ) ).isEmpty();
+        assertThat( userStorage.getUsers( "ORG2" ) ).isEmpty();
+    }
+
+    @Test
+    public void testGetByApiKey() {
+        UserStorage userStorage = new UserStorage( 100, "1", "2", "3", "4", Map.of(), true );
+        UserData userData = userStorage.store( new UserData( new User( null, "test@email", "fn", "ln" ) ), Storage.MODIFIED_BY_SYSTEM );
+        String accessKey = userData.getAccessKey();
+        String apiKey = userData.user.apiKey;
+
+        assertThat( userStorage.getByApiKey( accessKey, apiKey ) ).map( UserData::getId ).contains( "TSTML" );
+        assertThat( userStorage.getByApiKey( accessKey, "wrong" ) ).isEmpty();
+
+        String newApiKey = userStorage.refreshApikey( "test@email", Storage.MODIFIED_BY_SYSTEM ).orElseThrow().user.apiKey;
+
+        assertThat( userStorage.getByApiKey( accessKey, apiKey ) ).isEmpty();
+        assertThat( userStorage.getByApiKey( accessKey, newApiKey ) ).map( UserData::getId ).contains( "TSTML" );
+    }
+
+    @Test
+    public void testGetByApiKeySharedAccessKey() {
+        UserStorage userStorage = new UserStorage( 100, "1", "2", "3", "4", Map.of(), true );
+        UserData u1 = userStorage.store( new UserData( new User( null, "test@email", "fn", "ln" ) ), Storage.MODIFIED_BY_SYSTEM );
+        UserData u2 = userStorage.store( new UserData( new User( null, "test@e-mail", "fn", "ln" ) ), Storage.MODIFIED_BY_SYSTEM );
+
+        assertThat( userStorage.getByApiKey( u1.getAccessKey(), u1.user.apiKey ) ).map( UserData::getId ).contains( u1.getId() );
+        assertThat( userStorage.getByApiKey( u2.getAccessKey(), u2.user.apiKey ) ).map( UserData::getId ).contains( u2.getId() );
+
+        userStorage.delete( "test@email" );
+
+        assertThat( userStorage.getByApiKey( u1.getAccessKey(), u1.user.apiKey ) ).isEmpty();
+        assertThat( userStorage.getByApiKey( u2.getAccessKey(), u2.user.apiKey ) ).map( UserData::getId ).contains( u2.getId() );
+    }
+
+    @Test
+    public void testStoreDuplicateEmail() {
+        UserStorage userStorage = new UserStorage( 100, "1", "2", "3", "4", Map.of(), true );
+        userStorage.store( new UserData( new User( null, "test@email", "fn", "ln" ) ), Storage.MODIFIED_BY_SYSTEM );
+
+        assertThatThrownBy( () -> userStorage.store( new UserData( new User( null, "TEST@email", "fn2", "ln2" ) ), Storage.MODIFIED_BY_SYSTEM ) )
+            .isInstanceOf( EmailDuplicateException.class );
+
+        userStorage.delete( "test@email" );
+        userStorage.store( new UserData( new User( null, "TEST@email", "fn2", "ln2" ) ), Storage.MODIFIED_BY_SYSTEM );
+
+        assertThat( userStorage.get( "test@email" ) ).map( u -> u.user.firstName ).contains( "fn2" );
+    }
+
+    @Test
+    public void testUpdateDuplicateEmail() {
+        UserStorage userStorage = new UserStorage( 100, "1", "2", "3", "4", Map.of(), true );
+        UserData u1 = userStorage.store( new UserData( new User( null, "u1@email", "fn", "ln" ) ), Storage.MODIFIED_BY_SYSTEM );
+        UserData u2 = userStorage.store( new UserData( new User( null, "u2@email", "fn", "ln" ) ), Storage.MODIFIED_BY_SYSTEM );
+
+        assertThatThrownBy( () -> userStorage.updateUser( "u2@email", u -> u.email = "U1@email", Storage.MODIFIED_BY_SYSTEM ) )
+            .isInstanceOf( EmailDuplicateException.class );
+
+        assertThat( userStorage.get( "u1@email" ) ).map( UserData::getId ).contains( u1.getId() );
+        assertThat( userStorage.get( "u2@email" ) ).map( UserData::getId ).contains( u2.getId() );
+
+        userStorage.updateUser( "u2@email", u -> u.email = "u3@email", Storage.MODIFIED_BY_SYSTEM );
+
+        assertThat( userStorage.get( "u2@email" ) ).isEmpty();
+        assertThat( userStorage.get( "u3@email" ) ).map( UserData::getId ).contains( u2.getId() );
+    }
+
+    @Test
+    public void testView() {
+        UserStorage userStorage = new UserStorage( 100, "1", "2", "3", "4", Map.of(), true );
+        userStorage.store( new UserData( new User( null, "test@email", "fn", "ln" ) ), Storage.MODIFIED_BY_SYSTEM );
+
+        UserView view = userStorage.view( userStorage.getMetadata( "test@email" ).orElseThrow() );
+        assertThat( userStorage.view( userStorage.getMetadata( "test@email" ).orElseThrow() ) ).isSameAs( view );
+
+        userStorage.updateUser( "test@email", u -> u.firstName = "new fn", Storage.MODIFIED_BY_SYSTEM );
+
+        UserView updated = userStorage.view( userStorage.getMetadata( "test@email" ).orElseThrow() );
+        assertThat( updated ).isNotSameAs( view );
+        assertThat( updated.firstName ).isEqualTo( "new fn" );
+    }
 }